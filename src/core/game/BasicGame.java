@@ -36,6 +36,12 @@ public class BasicGame extends Game {
 	 */
 	public String obs;
 
+	/**
+	 * If true, the sprites in 'obs' can be created, destroyed or moved during
+	 * the game, and the pathfinder keeps its paths up to date with them.
+	 */
+	public boolean dynamic_obs;
+
 	// List of IDs of the sprites should not be traversable for the pathfinder.
 	private ArrayList<Integer> obstacles;
 
@@ -71,29 +77,7 @@ public class BasicGame extends Game {
 	 */
 	public void buildLevel(String gamelvl, int randomSeed) {
 		String[] lines = new IO().readFile(gamelvl);
-
-		// Pathfinder
-		obstacles = new ArrayList<>();
-		boolean doPathf = false;
-
-		if (obs != null) {
-			doPathf = true;
-			int obsArray[] = VGDLRegistry.GetInstance().explode(obs);
-			for (Integer it : obsArray)
-				obstacles.add(it);
-		}
-
-		if (doPathf)
-			pathf = new PathFinder(obstacles);
-
 		buildStringLevel(lines, randomSeed);
-
-		if (doPathf) {
-			long t = System.currentTimeMillis();
-
-			pathf.run(this.getObservation());
-			System.out.println(System.currentTimeMillis() - t);
-		}
 	}
 
 	@Override
@@ -202,9 +186,22 @@ public class BasicGame extends Game {
 		// Nobody has been killed... yet!
 		kill_list = new ArrayList<VGDLSprite>();
 
+		// Pathfinder. Paths are computed the first time they are requested, so
+		// building a level (i.e. many candidates in level generation) stays cheap.
+		if (obs != null) {
+			obstacles = new ArrayList<>();
+			int obsArray[] = VGDLRegistry.GetInstance().explode(obs);
+			for (Integer it : obsArray)
+				obstacles.add(it);
+			pathf = new PathFinder(obstacles, true, dynamic_obs);
+		}
+
 		// Generate the initial state observation.
 		this.createAvatars(-1);
 		this.initForwardModel();
+
+		if (pathf != null)
+			pathf.run(this.getObservation());
 	}
 
 	/**
@@ -0,0 +1,193 @@
+package core.game;
+
+import ontology.Types;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Advances several game states at once, each one with its own sequence of actions, running
+ * the rollouts in parallel on a shared ForkJoinPool. Useful for root-parallel search, population
+ * evaluation in evolutionary agents or fitness evaluation in level generators.
+ * <p/>
+ * Each state is copied before being advanced, so the states received are never modified and
+ * the same state can appear more than once in the array (i.e. several rollouts from the root).
+ * Copies are made in order before the rollouts start, so a batch from seeded states is repeatable.
+ */
+public class BatchAdvance
+{
+    /**
+     * Pool shared by all batch advances. Created the first time it is needed.
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * Returns the pool used to run the rollouts. By default, it has as many
+     * threads as available processors.
+     * @return the pool used to run the rollouts.
+     */
+    public static synchronized ForkJoinPool getPool()
+    {
+        if(pool == null)
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
+    /**
+     * Sets the pool used to run the rollouts (i.e. to limit the number of threads).
+     * @param newPool the pool to use from now on.
+     */
+    public static synchronized void setPool(ForkJoinPool newPool)
+    {
+        pool = newPool;
+    }
+
+    /**
+     * Advances a copy of each state with the sequence of actions at the same index. A rollout
+     * stops when its actions are exhausted or when the game is over.
+     * @param states states to roll from.
+     * @param actions one sequence of actions (for the avatar) per state.
+     * @return one result per state, in the same order.
+     */
+    public static Result[] advance(final StateObservation[] states, final Types.ACTIONS[][] actions)
+    {
+        checkLengths(states.length, actions.length);
+        final Result[] results = new Result[states.length];
+        final StateObservation[] copies = copyAll(states, new StateObservation[states.length]);
+        getPool().invoke(new RolloutTask(0, states.length, idx -> {
+            StateObservation st = copies[idx];
+            for(int i = 0; i < actions[idx].length && !st.isGameOver(); ++i)
+                st.advance(actions[idx][i]);
+            results[idx] = new Result(st);
+        }));
+        return results;
+    }
+
+    /**
+     * Method overloaded for multi player games. Advances a copy of each state with the sequence of
+     * joint actions at the same index (actions[state][step][playerID]). A rollout stops when its
+     * actions are exhausted or when the game is over.
+     * @param states states to roll from.
+     * @param actions one sequence of joint actions per state.
+     * @return one result per state, in the same order.
+     */
+    public static Result[] advance(final StateObservationMulti[] states, final Types.ACTIONS[][][] actions)
+    {
+        checkLengths(states.length, actions.length);
+        final Result[] results = new Result[states.length];
+        final StateObservationMulti[] copies = copyAll(states, new StateObservationMulti[states.length]);
+        getPool().invoke(new RolloutTask(0, states.length, idx -> {
+            StateObservationMulti st = copies[idx];
+            for(int i = 0; i < actions[idx].length && !st.isGameOver(); ++i)
+                st.advance(actions[idx][i]);
+            results[idx] = new Result(st);
+        }));
+        return results;
+    }
+
+    /**
+     * Copies the states in the calling thread and in order, so the random generator each
+     * copy gets from its origin does not depend on how the rollouts are scheduled.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends StateObservation> T[] copyAll(T[] states, T[] copies)
+    {
+        for(int i = 0; i < states.length; ++i)
+            copies[i] = (T) states[i].copy();
+        return copies;
+    }
+
+    private static void checkLengths(int numStates, int numSequences)
+    {
+        if(numStates != numSequences)
+            throw new IllegalArgumentException("BatchAdvance: " + numStates + " states but "
+                    + numSequences + " action sequences.");
+    }
+
+    /**
+     * Splits a range of rollouts in halves until there is one rollout per task.
+     */
+    private static class RolloutTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int from, to;
+        private IntConsumer rollout;
+
+        RolloutTask(int from, int to, IntConsumer rollout)
+        {
+            this.from = from;
+            this.to = to;
+            this.rollout = rollout;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from <= 1)
+            {
+                if(to > from)
+                    rollout.accept(from);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new RolloutTask(from, mid, rollout), new RolloutTask(mid, to, rollout));
+        }
+    }
+
+    /**
+     * Outcome of one rollout: final state, and scores and winners of all players in it.
+     */
+    public static class Result
+    {
+        /**
+         * State reached at the end of the rollout.
+         */
+        public StateObservation state;
+
+        /**
+         * Final score of each player, indexed by playerID.
+         */
+        public double[] scores;
+
+        /**
+         * Final win state of each player, indexed by playerID.
+         */
+        public Types.WINNER[] winners;
+
+        Result(StateObservation state)
+        {
+            this.state = state;
+            int noPlayers = state.getNoPlayers();
+            this.scores = new double[noPlayers];
+            this.winners = new Types.WINNER[noPlayers];
+            for(int i = 0; i < noPlayers; ++i)
+            {
+                //The avatar may have been destroyed during the rollout.
+                if(state.model.avatars[i] == null)
+                {
+                    scores[i] = Types.SCORE_DISQ;
+                    winners[i] = Types.WINNER.PLAYER_LOSES;
+                }else
+                {
+                    scores[i] = state.model.avatars[i].getScore();
+                    winners[i] = state.model.avatars[i].getWinState();
+                }
+            }
+        }
+
+        /**
+         * Final score of the first (or only) player.
+         * @return the score of player 0.
+         */
+        public double getScore() { return scores[0]; }
+
+        /**
+         * Final win state of the first (or only) player.
+         * @return the win state of player 0.
+         */
+        public Types.WINNER getWinner() { return winners[0]; }
+    }
+}
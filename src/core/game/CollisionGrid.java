@@ -0,0 +1,253 @@
+package core.game;
+
+import core.vgdl.VGDLSprite;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cells of the level with the sprites that overlap each of them, used to find the sprites
+ * a sprite collides with without checking it against all of them. Two sprites that
+ * intersect always share at least one cell, so only the sprites in the cells of the one
+ * colliding need to be checked, and the check is still the exact rectangle intersection.
+ * <p/>
+ * Games keep one for the sprites collisions are being checked against (see Game.eventHandling).
+ * It's built again every time an effect is executed, as effects may move, add or kill sprites.
+ */
+public class CollisionGrid
+{
+    /**
+     * Sprites that overlap more cells than this are not bucketed, but checked by all queries.
+     */
+    private static final int MAX_CELLS = 4;
+
+    /**
+     * Sprite classes that override intersects(), and those that don't. Some do more than
+     * checking the rectangles (i.e. platformers find out if they are on the ground), so they
+     * need to be checked against all sprites, as if there was no grid.
+     */
+    private static final ConcurrentHashMap<Class<?>, Boolean> ownIntersects = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /**
+     * Dimensions of the level, in cells, and size of each cell in pixels.
+     */
+    private int width, height, blockSize;
+
+    /**
+     * Sprites of each cell (x * height + y) are in entries[cellStart[cell] .. cellStart[cell+1]-1],
+     * as indices in 'sprites'.
+     */
+    private int[] cellStart;
+    private int[] entries;
+
+    /**
+     * Sprites in the grid, in the order they were received, and how many there are.
+     */
+    private VGDLSprite[] sprites;
+    private int numSprites;
+
+    /**
+     * Sprites (indices in 'sprites') that overlap too many cells to be bucketed.
+     */
+    private int[] large;
+    private int numLarge;
+
+    /**
+     * Sprites found by a query, and the query that last found each sprite (to add them only once).
+     */
+    private int[] found;
+    private int[] marks;
+    private int query;
+
+    /**
+     * Key and version of the sprites the grid is built with. Key is -1 if it's not built.
+     */
+    private int key;
+    private int version;
+
+    public CollisionGrid(int width, int height, int blockSize)
+    {
+        this.width = width;
+        this.height = height;
+        this.blockSize = blockSize;
+        cellStart = new int[width * height + 1];
+        entries = new int[16];
+        sprites = new VGDLSprite[16];
+        large = new int[16];
+        found = new int[16];
+        marks = new int[16];
+        key = -1;
+    }
+
+    /**
+     * Indicates if the grid is built with the sprites identified by the key and version given.
+     * @param key identifier of the sprites.
+     * @param version current version of the sprites (see Game.eventHandling).
+     * @return true if it is.
+     */
+    boolean isBuilt(int key, int version)
+    {
+        return this.key == key && this.version == version;
+    }
+
+    /**
+     * Builds the grid with the sprites received.
+     * @param key identifier of the sprites, to check later if the grid is built with them.
+     * @param version current version of the sprites.
+     * @param spriteList sprites to put in the grid.
+     */
+    void build(int key, int version, ArrayList<VGDLSprite> spriteList)
+    {
+        this.key = key;
+        this.version = version;
+        numSprites = spriteList.size();
+        numLarge = 0;
+        if(sprites.length < numSprites)
+        {
+            sprites = new VGDLSprite[numSprites];
+            large = new int[numSprites];
+            found = new int[numSprites];
+            marks = new int[numSprites];
+        }else
+            Arrays.fill(marks, 0);
+        query = 0;
+
+        //Counting sort by cell. Sprites are visited in order, so each cell keeps them in order too.
+        Arrays.fill(cellStart, 0);
+        int numEntries = 0;
+        for(int i = 0; i < numSprites; ++i)
+        {
+            VGDLSprite sprite = spriteList.get(i);
+            sprites[i] = sprite;
+            Rectangle r = sprite.rect;
+            int x1 = cellX(r.x), x2 = cellX(r.x + Math.max(r.width, 1) - 1);
+            int y1 = cellY(r.y), y2 = cellY(r.y + Math.max(r.height, 1) - 1);
+            int cells = (x2 - x1 + 1) * (y2 - y1 + 1);
+            if(cells > MAX_CELLS)
+            {
+                large[numLarge++] = i;
+                continue;
+            }
+            for(int x = x1; x <= x2; ++x)
+                for(int y = y1; y <= y2; ++y)
+                    cellStart[x * height + y + 1]++;
+            numEntries += cells;
+        }
+        for(int c = 0; c < width * height; ++c)
+            cellStart[c + 1] += cellStart[c];
+
+        if(entries.length < numEntries)
+            entries = new int[numEntries];
+        int[] next = Arrays.copyOf(cellStart, width * height);
+        int nextLarge = 0;
+        for(int i = 0; i < numSprites; ++i)
+        {
+            if(nextLarge < numLarge && large[nextLarge] == i)
+            {
+                nextLarge++;
+                continue;
+            }
+            Rectangle r = sprites[i].rect;
+            int x1 = cellX(r.x), x2 = cellX(r.x + Math.max(r.width, 1) - 1);
+            int y1 = cellY(r.y), y2 = cellY(r.y + Math.max(r.height, 1) - 1);
+            for(int x = x1; x <= x2; ++x)
+                for(int y = y1; y <= y2; ++y)
+                    entries[next[x * height + y]++] = i;
+        }
+    }
+
+    /**
+     * Gets the sprites of the grid a sprite intersects with, as they are now.
+     * @param sprite sprite to check. It's never part of the result, even if it's in the grid.
+     * @param result filled with the sprites it intersects, in the order the grid was built with.
+     */
+    void getColliding(VGDLSprite sprite, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        Rectangle r = sprite.rect;
+        int x1 = cellX(r.x), x2 = cellX(r.x + Math.max(r.width, 1) - 1);
+        int y1 = cellY(r.y), y2 = cellY(r.y + Math.max(r.height, 1) - 1);
+        if((x2 - x1 + 1) * (y2 - y1 + 1) > MAX_CELLS || hasOwnIntersects(sprite))
+        {
+            //Large sprites may collide with anything, and some sprites need to check all of them.
+            for(int i = 0; i < numSprites; ++i)
+                addIfColliding(sprite, sprites[i], result);
+            return;
+        }
+
+        int numFound = 0;
+        query++;
+        for(int x = x1; x <= x2; ++x)
+        {
+            for(int y = y1; y <= y2; ++y)
+            {
+                int cell = x * height + y;
+                for(int e = cellStart[cell]; e < cellStart[cell + 1]; ++e)
+                {
+                    int i = entries[e];
+                    if(marks[i] != query)
+                    {
+                        marks[i] = query;
+                        found[numFound++] = i;
+                    }
+                }
+            }
+        }
+        for(int l = 0; l < numLarge; ++l)
+        {
+            if(marks[large[l]] != query)
+            {
+                marks[large[l]] = query;
+                found[numFound++] = large[l];
+            }
+        }
+
+        //Sprites come from several cells, so they need sorting to be back in order.
+        if(numFound > 1)
+            Arrays.sort(found, 0, numFound);
+        for(int f = 0; f < numFound; ++f)
+            addIfColliding(sprite, sprites[found[f]], result);
+    }
+
+    private void addIfColliding(VGDLSprite sprite, VGDLSprite other, ArrayList<VGDLSprite> result)
+    {
+        if(sprite != other && sprite.intersects(other))
+            result.add(other);
+    }
+
+    /**
+     * Indicates if the class of a sprite overrides intersects().
+     * @param sprite sprite to check.
+     * @return true if it does.
+     */
+    static boolean hasOwnIntersects(VGDLSprite sprite)
+    {
+        Boolean own = ownIntersects.get(sprite.getClass());
+        if(own == null)
+        {
+            try {
+                own = sprite.getClass().getMethod("intersects", VGDLSprite.class).getDeclaringClass() != VGDLSprite.class;
+            } catch (NoSuchMethodException e) {
+                own = true;
+            }
+            ownIntersects.put(sprite.getClass(), own);
+        }
+        return own;
+    }
+
+    /**
+     * Column and row of the cell a pixel is in. Pixels out of the level are taken to the
+     * closest cell in it, which keeps any two overlapping ranges of pixels in common cells.
+     */
+    private int cellX(int px)
+    {
+        return Math.max(0, Math.min(width - 1, Math.floorDiv(px, blockSize)));
+    }
+
+    private int cellY(int py)
+    {
+        return Math.max(0, Math.min(height - 1, Math.floorDiv(py, blockSize)));
+    }
+}
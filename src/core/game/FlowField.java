@@ -0,0 +1,207 @@
+package core.game;
+
+import core.vgdl.VGDLSprite;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Distance map from a group of target sprites to every cell of the level, computed with a
+ * breadth first search that starts from all targets at once. Obstacles are not considered,
+ * so distances are Manhattan distances in cells, as GridPhysics measures them. Each cell
+ * also knows which target is the closest to it, when only one is.
+ * <p/>
+ * Games keep one per target type (see Game.getClosestSprite), so all chasers of that type
+ * find their closest target with a lookup instead of measuring the distance to every target.
+ */
+public class FlowField
+{
+    /**
+     * Value of 'closest' for cells with several targets at the same (minimum) distance.
+     */
+    private static final int TIED = -2;
+
+    /**
+     * Dimensions of the level, in cells, and size of each cell in pixels.
+     */
+    private int width, height, blockSize;
+
+    /**
+     * Distance, in cells, from each cell (x * height + y) to the closest target. -1 if there are no targets.
+     */
+    private int[] distances;
+
+    /**
+     * Closest target to each cell, as an index in 'targets'. TIED if there are several.
+     */
+    private int[] closest;
+
+    /**
+     * Cells to expand in the search. Kept to avoid allocating it every time.
+     */
+    private int[] queue;
+
+    /**
+     * Targets the field was computed from.
+     */
+    private ArrayList<VGDLSprite> targets;
+
+    /**
+     * True if the distances are computed for the current version of the targets.
+     */
+    private boolean computed;
+
+    /**
+     * True if all targets were aligned with the grid and inside the level when the
+     * field was computed. Otherwise, the field can't tell which target is the closest.
+     */
+    private boolean valid;
+
+    /**
+     * Version of the targets this field belongs to (see Game.getClosestSprite).
+     */
+    int version;
+
+    /**
+     * Work spent by the callers measuring distances to all targets since they last changed.
+     * The field is only computed when it's larger than the cost of computing it.
+     */
+    int scanWork;
+
+    public FlowField(int width, int height, int blockSize)
+    {
+        this.width = width;
+        this.height = height;
+        this.blockSize = blockSize;
+        distances = new int[width * height];
+        closest = new int[width * height];
+        queue = new int[width * height];
+        targets = new ArrayList<VGDLSprite>();
+        version = -1;
+    }
+
+    /**
+     * Discards the distances, as targets have changed.
+     * @param version new version of the targets.
+     */
+    void reset(int version)
+    {
+        this.version = version;
+        computed = false;
+        scanWork = 0;
+        targets.clear();
+    }
+
+    /**
+     * Indicates if the distances are computed for the current targets.
+     * @return true if they are.
+     */
+    boolean isComputed()
+    {
+        return computed;
+    }
+
+    /**
+     * Number of cells of the level, roughly the work needed to compute the field.
+     * @return the number of cells.
+     */
+    int numCells()
+    {
+        return distances.length;
+    }
+
+    /**
+     * Computes the distances from all the targets received.
+     * @param targetIt iterator over the targets. It can be null if there are none.
+     */
+    void compute(Iterator<VGDLSprite> targetIt)
+    {
+        computed = true;
+        valid = true;
+        targets.clear();
+        Arrays.fill(distances, -1);
+
+        int head = 0, tail = 0;
+        if(targetIt != null) while(targetIt.hasNext())
+        {
+            VGDLSprite target = targetIt.next();
+            int cell = cellOf(target.rect);
+            if(cell == -1)
+            {
+                valid = false;
+                return;
+            }
+
+            if(distances[cell] == 0)
+            {
+                //Several targets in the same cell.
+                closest[cell] = TIED;
+            }else
+            {
+                distances[cell] = 0;
+                closest[cell] = targets.size();
+                queue[tail++] = cell;
+            }
+            targets.add(target);
+        }
+
+        //All cells at distance d+1 are reached from the ones at distance d, which know their closest
+        // target by then. A cell has a single closest target only if all of them share it.
+        while(head < tail)
+        {
+            int cell = queue[head++];
+            int x = cell / height, y = cell % height;
+            int dist = distances[cell] + 1;
+
+            if(x > 0)          tail = visit(cell - height, cell, dist, tail);
+            if(x < width - 1)  tail = visit(cell + height, cell, dist, tail);
+            if(y > 0)          tail = visit(cell - 1, cell, dist, tail);
+            if(y < height - 1) tail = visit(cell + 1, cell, dist, tail);
+        }
+    }
+
+    private int visit(int cell, int from, int dist, int tail)
+    {
+        if(distances[cell] == -1)
+        {
+            distances[cell] = dist;
+            closest[cell] = closest[from];
+            queue[tail++] = cell;
+        }else if(distances[cell] == dist && closest[cell] != closest[from])
+        {
+            closest[cell] = TIED;
+        }
+        return tail;
+    }
+
+    /**
+     * Gets the target closest to a position, if there is only one.
+     * @param rect rectangle of the sprite looking for the target.
+     * @return the closest target. null if there are no targets, several are at the
+     * same distance or the field doesn't know the distances to that position.
+     */
+    VGDLSprite getClosest(Rectangle rect)
+    {
+        int cell = valid ? cellOf(rect) : -1;
+        if(cell == -1 || distances[cell] == -1 || closest[cell] == TIED)
+            return null;
+        return targets.get(closest[cell]);
+    }
+
+    /**
+     * Gets the cell of the level a rectangle is in.
+     * @param rect rectangle to check.
+     * @return the cell (x * height + y), -1 if it's not aligned with the grid or out of the level.
+     */
+    private int cellOf(Rectangle rect)
+    {
+        if(rect.x % blockSize != 0 || rect.y % blockSize != 0)
+            return -1;
+        int x = rect.x / blockSize, y = rect.y / blockSize;
+        if(x < 0 || x >= width || y < 0 || y >= height)
+            return -1;
+        return x * height + y;
+    }
+}
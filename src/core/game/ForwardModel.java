@@ -2,6 +2,8 @@ package core.game;
 
 import java.awt.Dimension;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.IntPredicate;
 
 import core.competition.CompetitionParameters;
 import core.logging.Logger;
@@ -35,6 +37,47 @@ public class ForwardModel extends Game
      */
     private Random randomObs;
 
+    /**
+     * Seed the random generators of the copies of this state are derived from, and the
+     * number of copies made so far. The n-th copy of a seeded state always gets the same
+     * generator, so a seeded state always produces the same sequence of copies (and rollouts),
+     * regardless of the thread they are advanced in. The counter is the only thing copying
+     * changes in this model, and it's updated atomically, so many threads can copy it at once.
+     */
+    private long seed;
+    private volatile long numCopies;
+    private static final AtomicLongFieldUpdater<ForwardModel> copyCounter =
+            AtomicLongFieldUpdater.newUpdater(ForwardModel.class, "numCopies");
+
+
+    /**
+     * Forward models released by each thread, to be reused by copyFromPool(), and the
+     * maximum number of them kept per thread.
+     */
+    private static final ThreadLocal<ArrayDeque<ForwardModel>> pool = ThreadLocal.withInitial(() -> new ArrayDeque<ForwardModel>());
+    private static final int MAX_POOLED = 64;
+
+    /**
+     * Orders observations by the distance to the reference they were just updated with, so
+     * sorting them doesn't measure every distance again.
+     */
+    private static final Comparator<Observation> BY_DISTANCE = (o1, o2) -> Double.compare(o1.sqDist, o2.sqDist);
+
+    /**
+     * Flag of the types hidden to the player in Game.spriteTypeInfo (see getTypeInfo()).
+     */
+    private static final int HIDDEN_TYPE = 1 << 16;
+
+    /**
+     * Number of times the sprites of this model have been copied or advanced. Observations
+     * sorted by get*Positions(reference) are only reused while it stays the same.
+     */
+    private int observationVersion;
+
+    /**
+     * Last observations sorted by get*Positions(reference), by category (Types.TYPE_*).
+     */
+    private SortedPositions[] sortedPositions;
 
     /**
      * Boolean map of sprite types that are players.
@@ -91,14 +134,10 @@ public class ForwardModel extends Game
     private boolean visibleList[][];
 
     /**
-     * List of (persistent) observations for all sprites, indexed by sprite ID.
+     * (Persistent) observations for all sprites, by sprite ID, and the grid of the level
+     * with the observations in each cell.
      */
-    private HashMap<Integer, Observation> observations;
-
-    /**
-     * Observation grid
-     */
-    private ArrayList<Observation>[][] observationGrid;
+    private ObservationGrid observationGrid;
 
     /**
      * Constructor for ForwardModel. Initializes everything
@@ -121,23 +160,56 @@ public class ForwardModel extends Game
      * from a game state (of class Game).
      * @param a_gameState game to take the state from.
      */
-    @SuppressWarnings("unchecked")
     final public void update(Game a_gameState)
+    {
+        update(a_gameState, false);
+    }
+
+    /**
+     * Dumps the game state into 'this' object.
+     * @param a_gameState game to take the state from.
+     * @param inPlace true to clear and refill the collections of this model, instead of
+     *                creating new ones. Only for models nobody else is reading (see copyInto()).
+     */
+    @SuppressWarnings("unchecked")
+    private void update(Game a_gameState, boolean inPlace)
     {
         int numSpriteTypes = a_gameState.spriteGroups.length;
-        kill_list = new ArrayList<VGDLSprite>();
-        bucketList = new Bucket[numSpriteTypes];
-        historicEvents = new TreeSet<Event>();
-        shieldedEffects = new ArrayList[numSpriteTypes];
+        inPlace = inPlace && spriteGroups != null && spriteGroups.length == numSpriteTypes;
+        if(inPlace)
+        {
+            kill_list.clear();
+            historicEvents.clear();
+        }else
+        {
+            kill_list = new ArrayList<VGDLSprite>();
+            bucketList = new Bucket[numSpriteTypes];
+            historicEvents = new TreeSet<Event>();
+            shieldedEffects = new ArrayList[numSpriteTypes];
+            spriteGroups = new SpriteGroup[numSpriteTypes];
+        }
 
         //Copy of sprites from the game.
-        spriteGroups = new SpriteGroup[numSpriteTypes];
         num_sprites = 0;
+        spritesById = null;
+        effectSprites = null;
+        observationVersion++;
+        spritesChanged();
+        gridCollisions = a_gameState.gridCollisions;
 
         for(int i = 0; i < spriteGroups.length; ++i)
         {
-            bucketList[i] = new Bucket();
-            spriteGroups[i] = new SpriteGroup(i);
+            if(inPlace)
+            {
+                bucketList[i].clear();
+                spriteGroups[i].clear();
+                shieldedEffects[i].clear();
+            }else
+            {
+                bucketList[i] = new Bucket();
+                spriteGroups[i] = new SpriteGroup(i);
+                shieldedEffects[i] = new ArrayList<>();
+            }
 
             /**
              * Index in the sprite group passed to the checkSpriteFeatures method to
@@ -152,15 +224,7 @@ public class ForwardModel extends Game
 
                 spriteGroups[i].addSprite(spCopy.spriteID, spCopy);
 
-                String hidden = "False";
-                if (spCopy.hidden != null) {
-                    String[] split = spCopy.hidden.split(",");
-                    if (playerID > split.length - 1)
-                        hidden = split[split.length - 1];
-                    else
-                        hidden = split[playerID];
-                }
-                if(!Boolean.parseBoolean(hidden)) {
+                if((getTypeInfo(spCopy, i) & HIDDEN_TYPE) == 0) {
                     checkSpriteFeatures(spCopy, i);
                     updateObservation(spCopy);
                 }
@@ -170,7 +234,6 @@ public class ForwardModel extends Game
             num_sprites += nSprites;
 
             //copy the shields
-            shieldedEffects[i] = new ArrayList<>();
             for(Pair p : a_gameState.shieldedEffects[i])
                 shieldedEffects[i].add(p.copy());
         }
@@ -181,7 +244,10 @@ public class ForwardModel extends Game
         }
 
         //copy the time effects:
-        this.timeEffects = new TreeSet<TimeEffect>();
+        if(inPlace)
+            this.timeEffects.clear();
+        else
+            this.timeEffects = new TreeSet<TimeEffect>();
         Iterator<TimeEffect> timeEffects = a_gameState.timeEffects.descendingIterator();
         while(timeEffects.hasNext())
         {
@@ -193,7 +259,8 @@ public class ForwardModel extends Game
         //Game state variables:
         this.gameTick = a_gameState.gameTick;
         this.isEnded = a_gameState.isEnded;
-        this.avatarLastAction = new Types.ACTIONS[no_players];
+        if(!inPlace)
+            this.avatarLastAction = new Types.ACTIONS[no_players];
         System.arraycopy(a_gameState.avatarLastAction, 0, avatarLastAction, 0, no_players);
         this.nextSpriteID = a_gameState.nextSpriteID;
     }
@@ -205,25 +272,21 @@ public class ForwardModel extends Game
      */
     private void updateObservation(VGDLSprite sprite)
     {
-        int spriteId = sprite.spriteID;
-        boolean moved = false, newObs = false;
-
-        Vector2d oldPosition = null;
-
-        Observation obs = observations.get(spriteId);
-        if(obs != null)
+        int slot = observationGrid.slotOf(sprite.spriteID);
+        if(slot >= 0)
         {
-            oldPosition = obs.position;
-            Vector2d position = sprite.getPosition();
-            moved = ! obs.position.equals(position);
-            obs.position = position;
+            //Only moved observations change their place in the grid.
+            Observation obs = observationGrid.getInSlot(slot);
+            if(obs.position.x != sprite.rect.x || obs.position.y != sprite.rect.y)
+            {
+                obs.position = sprite.getPosition();
+                observationGrid.place(slot, obs.position);
+            }
         }else
         {
-            obs = createSpriteObservation(sprite);
-            newObs = true;
+            Observation obs = createSpriteObservation(sprite);
+            observationGrid.place(observationGrid.slotOf(sprite.spriteID), obs.position);
         }
-
-        updateGrid(obs, newObs, moved, oldPosition);
     }
 
     /**
@@ -232,86 +295,7 @@ public class ForwardModel extends Game
      */
     public final void removeSpriteObservation(VGDLSprite sprite)
     {
-        int spriteId = sprite.spriteID;
-
-        Observation obs = observations.get(spriteId);
-        if(obs != null)
-        {
-            removeObservationFromGrid(obs, obs.position);
-            observations.remove(spriteId);
-        }
-    }
-
-    /**
-     * Updates a grid observation.
-     * @param obs observation to update
-     * @param newObs if this is a new observation.
-     * @param moved if it is a past observation, and it moved.
-     * @param oldPosition the old position of this observation if it moved.
-     */
-    private void updateGrid(Observation obs, boolean newObs, boolean moved, Vector2d oldPosition)
-    {
-        //Insert observation in the grid position.
-        if(newObs || moved)
-        {
-            //First, remove observation if the sprite moved.
-            if(moved)
-                removeObservationFromGrid(obs, oldPosition);
-
-            addObservationToGrid(obs, obs.position);
-        }
-    }
-
-    /**
-     * Removes an observation to the grid, from the position specified.
-     * @param obs observation to delete.
-     * @param position where the sprite was located last time seen.
-     */
-    private void removeObservationFromGrid(Observation obs, Vector2d position)
-    {
-        int x = (int) position.x / block_size;
-        boolean validX = x >= 0 && x < observationGrid.length;
-        boolean xPlus = (position.x % block_size) > 0 && (x+1 < observationGrid.length);
-        int y = (int) position.y / block_size;
-        boolean validY = y >= 0 && y < observationGrid[0].length;
-        boolean yPlus = (position.y % block_size) > 0 && (y+1 < observationGrid[0].length);
-
-        if(validX && validY)
-        {
-            observationGrid[x][y].remove(obs);
-            if(xPlus)
-                observationGrid[x+1][y].remove(obs);
-            if(yPlus)
-                observationGrid[x][y+1].remove(obs);
-            if(xPlus && yPlus)
-                observationGrid[x+1][y+1].remove(obs);
-        }
-    }
-
-    /**
-     * Adds an observation to the grid, in the position specified.
-     * @param obs observation to add.
-     * @param position where to be added.
-     */
-    private void addObservationToGrid(Observation obs, Vector2d position)
-    {
-        int x = (int) position.x / block_size;
-        boolean validX = x >= 0 && x < observationGrid.length;
-        boolean xPlus = (position.x % block_size) > 0 && (x+1 < observationGrid.length);
-        int y = (int) position.y / block_size;
-        boolean validY = y >= 0 && y < observationGrid[0].length;
-        boolean yPlus = (position.y % block_size) > 0 && (y+1 < observationGrid[0].length);
-
-        if(validX && validY)
-        {
-            observationGrid[x][y].add(obs);
-            if(xPlus)
-                observationGrid[x+1][y].add(obs);
-            if(yPlus)
-                observationGrid[x][y+1].add(obs);
-            if(xPlus && yPlus)
-                observationGrid[x+1][y+1].add(obs);
-        }
+        observationGrid.remove(sprite.spriteID);
     }
 
     /**
@@ -320,11 +304,11 @@ public class ForwardModel extends Game
     public void printObservationGrid()
     {
         System.out.println("#########################");
-        for(int j = 0; j < observationGrid[0].length; ++j)
+        for(int j = 0; j < observationGrid.getHeight(); ++j)
         {
-            for(int i = 0; i < observationGrid.length; ++i)
+            for(int i = 0; i < observationGrid.getWidth(); ++i)
             {
-                int n = observationGrid[i][j].size();
+                int n = observationGrid.size(i, j);
                 if(n > 0)
                     System.out.print(n);
                 else
@@ -342,9 +326,10 @@ public class ForwardModel extends Game
      */
     private Observation createSpriteObservation(VGDLSprite sprite)
     {
-        int category = getSpriteCategory(sprite);
-        Observation obs = new Observation(sprite.getType(), sprite.spriteID, sprite.getPosition(), Types.NIL, category);
-        observations.put(sprite.spriteID, obs);
+        int itype = sprite.getType();
+        int category = getSpriteCategory(sprite, itype);
+        Observation obs = new Observation(itype, sprite.spriteID, sprite.getPosition(), Types.NIL, category);
+        observationGrid.put(sprite.spriteID, obs);
         return obs;
     }
 
@@ -355,8 +340,7 @@ public class ForwardModel extends Game
      */
     private Observation getSpriteObservation(VGDLSprite sprite)
     {
-        int spriteId = sprite.spriteID;
-        Observation obs = observations.get(spriteId);
+        Observation obs = observationGrid.get(sprite.spriteID);
         if(obs != null)
         {
             return obs;
@@ -372,7 +356,7 @@ public class ForwardModel extends Game
      */
     private void checkSpriteFeatures(VGDLSprite sp, int itype)
     {
-        int category = getSpriteCategory(sp);
+        int category = getSpriteCategory(sp, itype);
         switch (category)
         {
             case Types.TYPE_AVATAR:
@@ -403,19 +387,64 @@ public class ForwardModel extends Game
                 movList[itype] = true;
         }
         unknownList[itype] = true;
+        visibleList[playerID][itype] = (getTypeInfo(sp, itype) & HIDDEN_TYPE) == 0;
+    }
 
-        String hidden = "False";
-        if (sp.hidden != null) {
-            String[] split = sp.hidden.split(",");
-            if (playerID > split.length - 1)
-                hidden = split[split.length - 1];
-            else
-                hidden = split[playerID];
+    /**
+     * Gets the category of a sprite (one of Types.TYPE_*).
+     * @param sp sprite to categorize.
+     * @param itype type of the sprite.
+     * @return the category of its type, or TYPE_FROMAVATAR if the sprite was created by
+     * the avatar and its type is in no other category.
+     */
+    private int getSpriteCategory(VGDLSprite sp, int itype)
+    {
+        int category = (getTypeInfo(sp, itype) & ~HIDDEN_TYPE) - 1;
+
+        //Created by the avatar? That's up to each sprite, not to its type.
+        if(category == Types.TYPE_MOVABLE && sp.is_from_avatar)
+            return Types.TYPE_FROMAVATAR;
+        return category;
+    }
+
+    /**
+     * Gets the category of a sprite type, plus one, and HIDDEN_TYPE if the player can't see it.
+     * They are worked out from the first sprite of the type and kept in spriteTypeInfo, shared by
+     * all copies of the game. They only depend on features of the type (not on is_from_avatar,
+     * which is set per sprite), so entries are only ever set to the same value, and copies
+     * advanced in different threads can fill them concurrently.
+     * @param sp sprite of the type.
+     * @param itype type of the sprite.
+     * @return the category and visibility of the type.
+     */
+    private int getTypeInfo(VGDLSprite sp, int itype)
+    {
+        int info = spriteTypeInfo[playerID][itype];
+        if(info == 0)
+        {
+            info = computeTypeCategory(sp) + 1;
+            String hidden = "False";
+            if (sp.hidden != null) {
+                String[] split = sp.hidden.split(",");
+                if (playerID > split.length - 1)
+                    hidden = split[split.length - 1];
+                else
+                    hidden = split[playerID];
+            }
+            if(Boolean.parseBoolean(hidden))
+                info |= HIDDEN_TYPE;
+            spriteTypeInfo[playerID][itype] = info;
         }
-        visibleList[playerID][itype] = !Boolean.parseBoolean(hidden);
+        return info;
     }
 
-    private int getSpriteCategory(VGDLSprite sp)
+    /**
+     * Works out the category of the type of a sprite. Types in no other category are movable,
+     * even if some of their sprites were created by the avatar (see getSpriteCategory()).
+     * @param sp sprite of the type.
+     * @return the category of the type (one of Types.TYPE_*).
+     */
+    private int computeTypeCategory(VGDLSprite sp)
     {
         if(sp.is_avatar)
             return Types.TYPE_AVATAR;
@@ -436,10 +465,6 @@ public class ForwardModel extends Game
         if(sp.is_static)
             return Types.TYPE_STATIC;
 
-        //is it created by the avatar?
-        if(sp.is_from_avatar)
-            return Types.TYPE_FROMAVATAR;
-
         return Types.TYPE_MOVABLE;
     }
 
@@ -449,17 +474,18 @@ public class ForwardModel extends Game
      */
     private void init()
     {
-        this.randomObs = new Random();
+        this.seed = new SplittableRandom().nextLong();
+        this.randomObs = new Random(mixSeed(seed));
         this.gameTick = 0;
         this.isEnded = false;
     }
 
     /**
      * Initializes the non volatile elements of a game (constructors, termination conditions,
-     * effects, etc). 'this' takes these from a_gameState,
+     * effects, etc). 'this' takes these from a_gameState. The maps and the observation grid
+     * of a previous state of the same game are cleared and kept (see copyInto()).
      * @param a_gameState Reference to the original game
      */
-    @SuppressWarnings("unchecked")
     private void initNonVolatile(Game a_gameState)
     {
         //We skip this.resource_colors and sampleRandom.
@@ -468,6 +494,7 @@ public class ForwardModel extends Game
         this.classConst = a_gameState.classConst;
         this.parameters = a_gameState.parameters;
         this.templateSprites = a_gameState.templateSprites;
+        this.updateKinds = a_gameState.updateKinds;
         this.collisionEffects = a_gameState.collisionEffects;
         this.definedEffects = a_gameState.definedEffects;
         this.eosEffects = a_gameState.eosEffects;
@@ -482,7 +509,8 @@ public class ForwardModel extends Game
         this.MAX_SPRITES = a_gameState.MAX_SPRITES;
         this.no_players = a_gameState.no_players;
         this.no_counters = a_gameState.no_counters;
-        this.avatarLastAction = new Types.ACTIONS[no_players];
+        if(avatarLastAction == null || avatarLastAction.length != no_players)
+            this.avatarLastAction = new Types.ACTIONS[no_players];
         System.arraycopy(a_gameState.avatarLastAction, 0, avatarLastAction, 0, no_players);
         this.avatars = new MovingAvatar[no_players];
         for (int i = 0; i < no_players; i++) {
@@ -491,27 +519,50 @@ public class ForwardModel extends Game
                 avatars[i].setKeyHandler(a_gameState.avatars[i].getKeyHandler());
             }
         }
-        this.counter = new int[no_counters];
+        if(counter == null || counter.length != no_counters)
+            this.counter = new int[no_counters];
         System.arraycopy(a_gameState.counter, 0, this.counter, 0, no_counters);
 
         //create the boolean maps of sprite types.
-        npcList = new boolean[a_gameState.spriteGroups.length];
-        immList = new boolean[a_gameState.spriteGroups.length];
-        movList = new boolean[a_gameState.spriteGroups.length];
-        resList = new boolean[a_gameState.spriteGroups.length];
-        portalList  = new boolean[a_gameState.spriteGroups.length];
-        fromAvatar  = new boolean[a_gameState.spriteGroups.length];
-        unknownList = new boolean[a_gameState.spriteGroups.length];
-        visibleList = new boolean[no_players][a_gameState.spriteGroups.length];
-        playerList  = new boolean[a_gameState.spriteGroups.length];
-
-        observations = new HashMap<Integer, Observation>();
-        observationGrid = new ArrayList[screenSize.width/block_size][screenSize.height/block_size];
-        for(int i = 0; i < observationGrid.length; ++i)
-            for(int j = 0; j < observationGrid[i].length; ++j)
-                observationGrid[i][j] = new ArrayList<Observation>();
+        int numSpriteTypes = a_gameState.spriteGroups.length;
+        npcList = clearMap(npcList, numSpriteTypes);
+        immList = clearMap(immList, numSpriteTypes);
+        movList = clearMap(movList, numSpriteTypes);
+        resList = clearMap(resList, numSpriteTypes);
+        portalList  = clearMap(portalList, numSpriteTypes);
+        fromAvatar  = clearMap(fromAvatar, numSpriteTypes);
+        unknownList = clearMap(unknownList, numSpriteTypes);
+        playerList  = clearMap(playerList, numSpriteTypes);
+        if(visibleList == null || visibleList.length != no_players)
+            visibleList = new boolean[no_players][];
+        for(int i = 0; i < no_players; ++i)
+            visibleList[i] = clearMap(visibleList[i], numSpriteTypes);
+
+        int gridWidth = screenSize.width/block_size, gridHeight = screenSize.height/block_size;
+        if(observationGrid != null && observationGrid.hasSize(gridWidth, gridHeight, block_size))
+            observationGrid.clear();
+        else
+            observationGrid = new ObservationGrid(gridWidth, gridHeight, block_size);
 
         this.pathf = a_gameState.pathf;
+
+        if(a_gameState.spriteTypeInfo == null)
+            a_gameState.spriteTypeInfo = new int[no_players][numSpriteTypes];
+        this.spriteTypeInfo = a_gameState.spriteTypeInfo;
+    }
+
+    /**
+     * Gets a boolean map of sprite types with all its entries to false.
+     * @param map map to clear, if it has the right size. It can be null.
+     * @param numSpriteTypes number of sprite types.
+     * @return the map received, cleared, or a new one if it can't be used.
+     */
+    private boolean[] clearMap(boolean[] map, int numSpriteTypes)
+    {
+        if(map == null || map.length != numSpriteTypes)
+            return new boolean[numSpriteTypes];
+        Arrays.fill(map, false);
+        return map;
     }
 
 
@@ -526,13 +577,46 @@ public class ForwardModel extends Game
     }
 
     /**
-     * Sets a new seed for the forward model's random generator (creates a new object)
+     * Sets a new seed for the forward model's random generator (creates a new object).
+     * Copies created from now on derive their own generators from this seed.
      *
      * @param seed the new seed.
      */
     public void setNewSeed(int seed)
+    {
+        setNewSeed((long) seed);
+    }
+
+    /**
+     * Sets a new seed for the forward model's random generator (creates a new object).
+     * Copies created from now on derive their own generators from this seed.
+     *
+     * @param seed the new seed.
+     */
+    public void setNewSeed(long seed)
     {
         randomObs = new Random(seed);
+        this.seed = seed;
+        numCopies = 0;
+    }
+
+    /**
+     * Gets the seed of the next copy of this model. Only the counter of copies changes.
+     * @return the seed for the generator of the copy.
+     */
+    private long nextCopySeed()
+    {
+        return mixSeed(seed + 0x9E3779B97F4A7C15L * copyCounter.incrementAndGet(this));
+    }
+
+    /**
+     * Scrambles a seed, so consecutive values give unrelated generators.
+     */
+    private static long mixSeed(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
 
@@ -553,6 +637,10 @@ public class ForwardModel extends Game
     {
         MovingAvatar a = avatars[playerID];
         if (!a.is_disabled()) {
+            //Handlers other than KeyInput (i.e. KeyPulse) are shared with the real game and all
+            // its copies. Use a private one, so copies can be advanced concurrently.
+            if (!(a.getKeyHandler() instanceof KeyInput))
+                a.setKeyHandler(new KeyInput());
             KeyHandler ki = a.getKeyHandler();
             ki.reset(playerID);
             ki.setAction(action, a.getPlayerID());
@@ -570,9 +658,13 @@ public class ForwardModel extends Game
      * Doesn't update disabled sprites.
      */
     protected void tick() {
+        spritesChanged();
+
         for(int i = spriteOrder.length-1; i >= 0; --i)
         {
             int spriteTypeInt = spriteOrder[i];
+            if(tickStaticType(spriteTypeInt))
+                continue;
 
             Iterator<VGDLSprite> spriteIt = spriteGroups[spriteTypeInt].getSpriteIterator();
             if(spriteIt != null) while(spriteIt.hasNext())
@@ -583,6 +675,7 @@ public class ForwardModel extends Game
                 {
                     sp.preMovement();
                     sp.update(this);
+                    spriteChanged(sp);
                 }
             }
         }
@@ -594,14 +687,28 @@ public class ForwardModel extends Game
      * @param action
      */
     final public void advance(Types.ACTIONS action) {
-        if(!isEnded) {
+        advance(action, 1);
+    }
+
+    /**
+     * Advances the forward model several game ticks, applying the same action in all of them.
+     * Stops as soon as the game is over. Observations are only refreshed after the last tick.
+     * @param action action of the avatar for every tick.
+     * @param repeat number of game ticks to advance.
+     */
+    final public void advance(Types.ACTIONS action, int repeat) {
+        boolean advanced = false;
+        for(int i = 0; i < repeat && !isEnded; ++i) {
             //apply player action
             updateAvatars(action, 0);
             //update all the other sprites
             tick();
             //update game state
             advance_aux();
+            advanced = true;
         }
+        if(advanced)
+            updateAllObservations();
     }
 
     /**
@@ -610,30 +717,43 @@ public class ForwardModel extends Game
      *                to playerID).
      */
     final public void advance(Types.ACTIONS[] actions) {
+        advance(actions, 1);
+    }
 
-        if(!isEnded) {
+    /**
+     * Advances the forward model several game ticks, applying the same actions in all of them.
+     * Stops as soon as the game is over. Observations are only refreshed after the last tick.
+     * @param actions array of actions of all players (index in array corresponds
+     *                to playerID).
+     * @param repeat number of game ticks to advance.
+     */
+    final public void advance(Types.ACTIONS[] actions, int repeat) {
+        boolean advanced = false;
+        for(int i = 0; i < repeat && !isEnded; ++i) {
             //apply actions of all players
-            for (int i = 0; i < actions.length; i++) {
-                Types.ACTIONS a = actions[i]; // action
-                updateAvatars(a, i); // index in array actions is the playerID
+            for (int j = 0; j < actions.length; j++) {
+                Types.ACTIONS a = actions[j]; // action
+                updateAvatars(a, j); // index in array actions is the playerID
             }
             //update all other sprites in the game
             tick();
             //update game state
             advance_aux();
+            advanced = true;
         }
-        //System.out.println(isMultiGameOver());
+        if(advanced)
+            updateAllObservations();
     }
 
     /**
      * Auxiliary method for advance methods, to avoid code duplication.
+     * Observations are not updated here, see updateAllObservations().
      */
     private void advance_aux() {
         eventHandling();
         clearAll(this);
         terminationHandling();
         checkTimeOut();
-        updateAllObservations();
         gameTick++;
     }
 
@@ -641,6 +761,8 @@ public class ForwardModel extends Game
      * Updates all observations of this class.
      */
     private void updateAllObservations() {
+        observationVersion++;
+
         //Now, update all others (but avatar).
         int typeIndex = spriteOrder.length-1;
         for(int i = typeIndex; i >=0; --i)   //For update, opposite order than drawing.
@@ -657,15 +779,88 @@ public class ForwardModel extends Game
     }
 
     /**
-     * Creates a copy of this forward model.
+     * Creates a new, empty, forward model of the game to replace this one, when this one
+     * cannot be updated in place because an observation view still reads from it. The new
+     * model takes over the seed and generator of this one, so later observations keep deriving
+     * their generators from the game seed.
+     * @param a_gameState game the new model belongs to.
+     * @return the forward model that replaces this one.
+     */
+    final ForwardModel successor(Game a_gameState)
+    {
+        ForwardModel next = new ForwardModel(a_gameState, this.playerID);
+        next.seed = seed;
+        next.numCopies = numCopies;
+        next.randomObs = randomObs;
+        seed = nextCopySeed();
+        numCopies = 0;
+        return next;
+    }
+
+    /**
+     * Creates a copy of this forward model. The copy gets its own random generator, derived
+     * from the seed of this model (see setNewSeed()). Several threads can copy the same model.
      * @return the copy of this forward model.
      */
     final public ForwardModel copy() {
         ForwardModel copyObs = new ForwardModel(this, this.playerID);
         copyObs.update(this);
+        copyObs.setNewSeed(nextCopySeed());
         return copyObs;
     }
 
+    /**
+     * Overwrites another forward model of the same game with a copy of this one. The
+     * result is the same as copy(), but the collections of the target are cleared and
+     * refilled instead of created again. Anything read from the target before (i.e. its
+     * observation grid) is not valid after this call.
+     * @param target forward model to overwrite. It must have been copied from a model of
+     *               this same game, and nobody else must be reading it.
+     */
+    final public void copyInto(ForwardModel target) {
+        if(target == this)
+            throw new IllegalArgumentException("A forward model can't be copied into itself.");
+        if(target.classConst != classConst)
+            throw new IllegalArgumentException("The target forward model belongs to a different game.");
+
+        target.playerID = this.playerID;
+        target.is_stochastic = false;
+        target.initNonVolatile(this);
+        target.update(this, true);
+        target.setNewSeed(nextCopySeed());
+    }
+
+    /**
+     * Creates a copy of this forward model, overwriting one released before by this same
+     * thread if there is any (see release()). This saves creating the collections of the
+     * model again and again in agents that copy states many times per game tick.
+     * @return the copy of this forward model.
+     */
+    final public ForwardModel copyFromPool() {
+        ArrayDeque<ForwardModel> released = pool.get();
+        ForwardModel target;
+        while((target = released.poll()) != null)
+        {
+            //Models of other games (previous ones played by this thread) are dropped.
+            if(target.classConst == classConst)
+            {
+                copyInto(target);
+                return target;
+            }
+        }
+        return copy();
+    }
+
+    /**
+     * Gives this forward model back to the pool of the current thread, to be overwritten
+     * by a later call to copyFromPool(). It must not be used after this call.
+     */
+    final public void release() {
+        ArrayDeque<ForwardModel> released = pool.get();
+        if(released.size() < MAX_POOLED)
+            released.push(this);
+    }
+
     /**
      * Gets the game score of this state.
      * @return the game score.
@@ -834,11 +1029,7 @@ public class ForwardModel extends Game
             return owned;
 
         //And for each type, add their amount.
-        Set<Map.Entry<Integer, Integer>> entries = avatars[playerID].resources.entrySet();
-        for(Map.Entry<Integer, Integer> entry : entries)
-        {
-            owned.put(entry.getKey(), entry.getValue());
-        }
+        avatars[playerID].getResources(owned);
 
         return owned;
     }
@@ -941,29 +1132,35 @@ public class ForwardModel extends Game
 
     /**
      * Gets position from the sprites corresponding to the boolean map passed by parameter.
+     * The result sorted by a reference is kept until the sprites change, so asking again for the
+     * same reference in the same tick doesn't sort them again.
      * @param groupArray boolean map that indicates which sprite types must be considered.
+     * @param category category of those sprite types (Types.TYPE_*).
      * @param refPosition the reference position (origin of the coordinate system)
      * @return List of arrays with Observations. Each entry in the array corresponds to a different
      * sprite type. Orders the observations in each array according to ascending distance to the reference position.
      */
     @SuppressWarnings("unchecked")
-    private ArrayList<Observation>[] getPositionsFrom(boolean[] groupArray, Vector2d refPosition)
+    private ArrayList<Observation>[] getPositionsFrom(boolean[] groupArray, int category, Vector2d refPosition)
     {
-        //First, get how many types we have. Need to consider hidden sprites out.
-        int numDiffTypes = 0;
-        for(int i = 0; i < groupArray.length; ++i)
-        {
-            //There is a sprite type we don't know anything about. Need to check.
-            if(!unknownList[i] && spriteGroups[i].getFirstSprite() != null)
-                checkSpriteFeatures(spriteGroups[i].getFirstSprite(), i);
-
-            if(groupArray[i] && visibleList[playerID][i]) numDiffTypes++;
-        }
-
+        int numDiffTypes = countVisibleTypes(groupArray);
         if(numDiffTypes == 0)
             return null; //Wait, no types? no sprites of this group then.
 
         ArrayList<Observation>[] observations = new ArrayList[numDiffTypes];
+        SortedPositions sorted = getSortedPositions(category, refPosition, numDiffTypes);
+        if(sorted != null)
+        {
+            //Same sprites and reference: only the distances need to be set again.
+            for(int idx = 0; idx < numDiffTypes; ++idx)
+            {
+                observations[idx] = new ArrayList<Observation>(sorted.observations[idx]);
+                for(Observation observation : observations[idx])
+                    observation.update(observation.itype, observation.obsID, observation.position, refPosition, observation.category);
+            }
+            return observations;
+        }
+
         Vector2d reference = refPosition;
         if(refPosition == null)
             reference = Types.NIL;
@@ -981,7 +1178,7 @@ public class ForwardModel extends Game
                     VGDLSprite sp = spriteIt.next();
 
                     Observation observation = getSpriteObservation(sp);
-                    observation.update(i, sp.spriteID, sp.getPosition(), reference, getSpriteCategory(sp));
+                    observation.update(i, sp.spriteID, getPosition(observation, sp), reference, getSpriteCategory(sp, i));
 
                     observation.reference = reference;
                     observations[idx].add(observation);
@@ -989,23 +1186,162 @@ public class ForwardModel extends Game
 
                 if(refPosition != null)
                 {
-                    Collections.sort(observations[idx]);
+                    observations[idx].sort(BY_DISTANCE);
                 }
 
                 idx++;
             }
         }
 
+        if(refPosition != null)
+            keepSortedPositions(category, refPosition, observations);
+        return observations;
+    }
+
+    /**
+     * Gets position from the k sprites of each type of the boolean map passed by parameter closest
+     * to a reference, using the spatial index of each type instead of sorting all of them.
+     * @param groupArray boolean map that indicates which sprite types must be considered.
+     * @param category category of those sprite types (Types.TYPE_*).
+     * @param refPosition the reference position (origin of the coordinate system). If null,
+     *                    Types.NIL is used, as getPositionsFrom(groupArray, category, refPosition) does,
+     *                    and the k sprites closest to it are returned.
+     * @param k maximum number of observations of each type.
+     * @return List of arrays with Observations, as getPositionsFrom(groupArray, category, refPosition)
+     * but with only the first k observations of each array.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ArrayList<Observation>[] getPositionsFrom(boolean[] groupArray, int category, Vector2d refPosition, int k)
+    {
+        int numDiffTypes = countVisibleTypes(groupArray);
+        if(numDiffTypes == 0)
+            return null;
+
+        Vector2d reference = refPosition;
+        if(refPosition == null)
+            reference = Types.NIL;
+
+        ArrayList<Observation>[] observations = new ArrayList[numDiffTypes];
+        SortedPositions sorted = getSortedPositions(category, reference, numDiffTypes);
+        ArrayList<VGDLSprite> sprites = new ArrayList<VGDLSprite>();
+        int idx = 0;
+        for(int i = 0; i < groupArray.length; ++i)
+        {
+            if(groupArray[i] && visibleList[playerID][i])
+            {
+                if(sorted != null)
+                {
+                    //Sorted already: the closest ones are the first ones.
+                    ArrayList<Observation> all = sorted.observations[idx];
+                    observations[idx] = new ArrayList<Observation>(all.subList(0, Math.max(0, Math.min(k, all.size()))));
+                    for(Observation observation : observations[idx])
+                        observation.update(i, observation.obsID, observation.position, reference, observation.category);
+                }else
+                {
+                    sprites.clear();
+                    getSpatialIndex(i, 0, 0, true).getNearest(reference, k, sprites);
+                    observations[idx] = getObservations(i, sprites, reference);
+                }
+                idx++;
+            }
+        }
         return observations;
     }
 
+    /**
+     * Counts the sprite types of a boolean map the player can see, categorizing first
+     * the types that are not known yet.
+     * @param groupArray boolean map of sprite types.
+     * @return the number of visible types in it.
+     */
+    private int countVisibleTypes(boolean[] groupArray)
+    {
+        //Need to consider hidden sprites out.
+        int numDiffTypes = 0;
+        for(int i = 0; i < groupArray.length; ++i)
+        {
+            //There is a sprite type we don't know anything about. Need to check.
+            if(!unknownList[i] && spriteGroups[i].getFirstSprite() != null)
+                checkSpriteFeatures(spriteGroups[i].getFirstSprite(), i);
+
+            if(groupArray[i] && visibleList[playerID][i]) numDiffTypes++;
+        }
+        return numDiffTypes;
+    }
+
+    /**
+     * Gets the observations of a category last sorted by get*Positions(reference), if the
+     * sprites haven't changed since and they were sorted by the same reference.
+     * @param category category of the sprites (Types.TYPE_*).
+     * @param refPosition reference position.
+     * @param numDiffTypes number of visible types of the category.
+     * @return the sorted observations, or null if there are none for this reference.
+     */
+    private SortedPositions getSortedPositions(int category, Vector2d refPosition, int numDiffTypes)
+    {
+        if(sortedPositions == null || refPosition == null)
+            return null;
+        SortedPositions sorted = sortedPositions[category];
+        if(sorted == null || sorted.version != observationVersion || sorted.observations.length != numDiffTypes
+                || sorted.refX != refPosition.x || sorted.refY != refPosition.y)
+            return null;
+        return sorted;
+    }
+
+    /**
+     * Keeps the observations of a category sorted by a reference, for the next calls of this tick.
+     * They are copied, as agents may change the lists they receive.
+     * @param category category of the sprites (Types.TYPE_*).
+     * @param refPosition reference position they are sorted by.
+     * @param observations sorted observations of each visible type of the category.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void keepSortedPositions(int category, Vector2d refPosition, ArrayList<Observation>[] observations)
+    {
+        if(sortedPositions == null)
+            sortedPositions = new SortedPositions[Types.TYPE_MOVABLE + 1];
+        SortedPositions sorted = sortedPositions[category];
+        if(sorted == null)
+            sorted = sortedPositions[category] = new SortedPositions();
+        if(sorted.observations == null || sorted.observations.length != observations.length)
+        {
+            sorted.observations = new ArrayList[observations.length];
+            for(int idx = 0; idx < observations.length; ++idx)
+                sorted.observations[idx] = new ArrayList<Observation>();
+        }
+
+        for(int idx = 0; idx < observations.length; ++idx)
+        {
+            ArrayList<Observation> list = sorted.observations[idx];
+            list.clear();
+            for(Observation observation : observations[idx])
+                list.add(observation);
+        }
+        sorted.version = observationVersion;
+        sorted.refX = refPosition.x;
+        sorted.refY = refPosition.y;
+    }
+
     /**
      * Returns a grid with all observations in the level.
      * @return the grid of observations
      */
     public ArrayList<Observation>[][] getObservationGrid()
     {
-        return observationGrid;
+        return observationGrid.getView();
+    }
+
+    /**
+     * Checks if a cell of the observation grid holds an observation of any of the given
+     * sprite types, without building the grid (see getObservationGrid).
+     * @param x column of the cell.
+     * @param y row of the cell.
+     * @param itypes tells which sprite types to look for.
+     * @return true if any observation in the cell is of one of the types.
+     */
+    public boolean observationGridContains(int x, int y, IntPredicate itypes)
+    {
+        return observationGrid.contains(x, y, itypes);
     }
 
     /**
@@ -1030,7 +1366,7 @@ public class ForwardModel extends Game
      */
     public ArrayList<Observation>[] getNPCPositions(Vector2d refPosition)
     {
-        return getPositionsFrom(npcList, refPosition);
+        return getPositionsFrom(npcList, Types.TYPE_NPC, refPosition);
     }
 
     /**
@@ -1040,7 +1376,7 @@ public class ForwardModel extends Game
      * @return a list with the observations of static objects in the game.
      */
     public ArrayList<Observation>[] getImmovablePositions(Vector2d refPosition) {
-        return getPositionsFrom(immList, refPosition);
+        return getPositionsFrom(immList, Types.TYPE_STATIC, refPosition);
     }
 
     /**
@@ -1050,7 +1386,7 @@ public class ForwardModel extends Game
      * @return a list with observations of sprites that move, but are NOT NPCs.
      */
     public ArrayList<Observation>[] getMovablePositions(Vector2d refPosition) {
-        return getPositionsFrom(movList, refPosition);
+        return getPositionsFrom(movList, Types.TYPE_MOVABLE, refPosition);
     }
 
     /**
@@ -1060,7 +1396,7 @@ public class ForwardModel extends Game
      * @return a list with observations of resources.
      */
     public ArrayList<Observation>[] getResourcesPositions(Vector2d refPosition) {
-        return getPositionsFrom(resList, refPosition);
+        return getPositionsFrom(resList, Types.TYPE_RESOURCE, refPosition);
     }
 
     /**
@@ -1070,7 +1406,7 @@ public class ForwardModel extends Game
      * @return a list with observations of portals.
      */
     public ArrayList<Observation>[] getPortalsPositions(Vector2d refPosition) {
-        return getPositionsFrom(portalList, refPosition);
+        return getPositionsFrom(portalList, Types.TYPE_PORTAL, refPosition);
     }
 
     /**
@@ -1081,9 +1417,169 @@ public class ForwardModel extends Game
      */
     public ArrayList<Observation>[] getFromAvatarSpPositions(Vector2d refPosition)
     {
-        return getPositionsFrom(fromAvatar, refPosition);
+        return getPositionsFrom(fromAvatar, Types.TYPE_FROMAVATAR, refPosition);
+    }
+
+    /**
+     * Observations of the k NPCs of each type closest to a reference position.
+     * @param refPosition reference position to measure distances from.
+     * @param k maximum number of observations of each type.
+     * @return as getNPCPositions(refPosition), with only the first k observations of each type.
+     */
+    public ArrayList<Observation>[] getNPCPositions(Vector2d refPosition, int k)
+    {
+        return getPositionsFrom(npcList, Types.TYPE_NPC, refPosition, k);
+    }
+
+    /**
+     * Observations of the k static objects of each type closest to a reference position.
+     * @param refPosition reference position to measure distances from.
+     * @param k maximum number of observations of each type.
+     * @return as getImmovablePositions(refPosition), with only the first k observations of each type.
+     */
+    public ArrayList<Observation>[] getImmovablePositions(Vector2d refPosition, int k) {
+        return getPositionsFrom(immList, Types.TYPE_STATIC, refPosition, k);
+    }
+
+    /**
+     * Observations of the k sprites of each type that move, but are NOT NPCs, closest to a reference position.
+     * @param refPosition reference position to measure distances from.
+     * @param k maximum number of observations of each type.
+     * @return as getMovablePositions(refPosition), with only the first k observations of each type.
+     */
+    public ArrayList<Observation>[] getMovablePositions(Vector2d refPosition, int k) {
+        return getPositionsFrom(movList, Types.TYPE_MOVABLE, refPosition, k);
+    }
+
+    /**
+     * Observations of the k resources of each type closest to a reference position.
+     * @param refPosition reference position to measure distances from.
+     * @param k maximum number of observations of each type.
+     * @return as getResourcesPositions(refPosition), with only the first k observations of each type.
+     */
+    public ArrayList<Observation>[] getResourcesPositions(Vector2d refPosition, int k) {
+        return getPositionsFrom(resList, Types.TYPE_RESOURCE, refPosition, k);
+    }
+
+    /**
+     * Observations of the k portals of each type closest to a reference position.
+     * @param refPosition reference position to measure distances from.
+     * @param k maximum number of observations of each type.
+     * @return as getPortalsPositions(refPosition), with only the first k observations of each type.
+     */
+    public ArrayList<Observation>[] getPortalsPositions(Vector2d refPosition, int k) {
+        return getPositionsFrom(portalList, Types.TYPE_PORTAL, refPosition, k);
+    }
+
+    /**
+     * Observations of the k sprites of each type created by the avatar closest to a reference position.
+     * @param refPosition reference position to measure distances from.
+     * @param k maximum number of observations of each type.
+     * @return as getFromAvatarSpPositions(refPosition), with only the first k observations of each type.
+     */
+    public ArrayList<Observation>[] getFromAvatarSpPositions(Vector2d refPosition, int k)
+    {
+        return getPositionsFrom(fromAvatar, Types.TYPE_FROMAVATAR, refPosition, k);
+    }
+
+
+    /**
+     * Observations of the k sprites of a type closest to a reference position, using the spatial
+     * index of the type instead of sorting all of them.
+     * @param itype type of the sprites.
+     * @param reference position to measure distances from.
+     * @param k maximum number of observations to return.
+     * @return the observations, by ascending distance to the reference (as the first k observations
+     * of that type returned by get*Positions(reference)). Empty if the type is not visible.
+     */
+    public ArrayList<Observation> getNearestObservations(int itype, Vector2d reference, int k)
+    {
+        ArrayList<VGDLSprite> sprites = new ArrayList<VGDLSprite>();
+        if(isVisibleType(itype))
+            getSpatialIndex(itype, 0, 0, true).getNearest(reference, k, sprites);
+        return getObservations(itype, sprites, reference);
+    }
+
+    /**
+     * Observations of the sprites of a type within a distance of a reference position, using the
+     * spatial index of the type instead of checking all of them.
+     * @param itype type of the sprites.
+     * @param reference position to measure distances from.
+     * @param radius maximum distance, in pixels.
+     * @return the observations, by ascending distance to the reference. Empty if the type is not visible.
+     */
+    public ArrayList<Observation> getObservationsInRadius(int itype, Vector2d reference, double radius)
+    {
+        ArrayList<VGDLSprite> sprites = new ArrayList<VGDLSprite>();
+        if(isVisibleType(itype))
+            getSpatialIndex(itype, 0, 0, true).getInRadius(reference, radius, sprites);
+        return getObservations(itype, sprites, reference);
     }
 
+    /**
+     * Gets the observation of a sprite by its ID, in constant time.
+     * @param obsID ID of the sprite (as in Observation.obsID).
+     * @return the observation of the sprite, or null if there is no sprite with that ID
+     * or it's not visible.
+     */
+    public Observation getObservation(int obsID)
+    {
+        VGDLSprite sp = getSpriteById(obsID);
+        if(sp == null)
+            return null;
+        int itype = sp.getType();
+        if(!isVisibleType(itype))
+            return null;
+
+        Observation observation = getSpriteObservation(sp);
+        observation.update(itype, sp.spriteID, getPosition(observation, sp), Types.NIL, getSpriteCategory(sp, itype));
+        return observation;
+    }
+
+    /**
+     * Checks if the player can see the sprites of a type, categorizing it first if needed.
+     * @param itype type of the sprites.
+     * @return true if they are visible.
+     */
+    private boolean isVisibleType(int itype)
+    {
+        if(!unknownList[itype] && spriteGroups[itype].getFirstSprite() != null)
+            checkSpriteFeatures(spriteGroups[itype].getFirstSprite(), itype);
+        return visibleList[playerID][itype];
+    }
+
+    /**
+     * Gets the observations of some sprites, updated with their distance to a reference.
+     * @param itype type of the sprites.
+     * @param sprites sprites to get the observations of.
+     * @param reference position to measure distances from.
+     * @return the observations, in the same order as the sprites.
+     */
+    private ArrayList<Observation> getObservations(int itype, ArrayList<VGDLSprite> sprites, Vector2d reference)
+    {
+        ArrayList<Observation> result = new ArrayList<Observation>(sprites.size());
+        for(VGDLSprite sp : sprites)
+        {
+            Observation observation = getSpriteObservation(sp);
+            observation.update(itype, sp.spriteID, getPosition(observation, sp), reference, getSpriteCategory(sp, itype));
+            result.add(observation);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the position of a sprite for its observation. Positions are only created when
+     * sprites move, so the one the observation has is kept if the sprite is still there.
+     * @param obs observation of the sprite.
+     * @param sprite sprite observed.
+     * @return the position of the sprite.
+     */
+    private Vector2d getPosition(Observation obs, VGDLSprite sprite)
+    {
+        if(obs.position != null && obs.position.x == sprite.rect.x && obs.position.y == sprite.rect.y)
+            return obs.position;
+        return sprite.getPosition();
+    }
 
     //Must override this:
     @Override
@@ -1091,4 +1587,14 @@ public class ForwardModel extends Game
         throw new RuntimeException("buildLevel should not be called in this instance.");
     }
 
+    /**
+     * Observations of the visible types of a category, sorted by distance to a reference, and
+     * the version of the observations they were sorted with (see observationVersion).
+     */
+    private static class SortedPositions
+    {
+        int version;
+        double refX, refY;
+        ArrayList<Observation>[] observations;
+    }
 }
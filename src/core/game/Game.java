@@ -17,6 +17,7 @@ import ontology.Types;
 import ontology.avatar.MovingAvatar;
 import ontology.effects.Effect;
 import ontology.effects.TimeEffect;
+import ontology.physics.GridPhysics;
 import ontology.sprites.Resource;
 import tools.*;
 import tools.pathfinder.Node;
@@ -65,6 +66,30 @@ public abstract class Game {
 	 */
 	protected VGDLSprite[] templateSprites;
 
+	/**
+	 * How the sprites of each type are updated by tick() (UPDATE_ACTIVE, UPDATE_TIMER or
+	 * UPDATE_STATIC). Worked out from the template of each type when it is created, and
+	 * shared by the game and all its copies.
+	 */
+	protected byte[] updateKinds;
+
+	/**
+	 * Kinds of update of the sprite types: sprites that need preMovement() and update()
+	 * every tick, sprites that don't move or change by themselves but have a time to live,
+	 * and sprites that don't do anything by themselves (i.e. walls).
+	 */
+	protected static final byte UPDATE_ACTIVE = 0;
+	protected static final byte UPDATE_TIMER = 1;
+	protected static final byte UPDATE_STATIC = 2;
+
+	/**
+	 * Category and visibility of each sprite type for each player, worked out by the forward
+	 * models of this game (see ForwardModel.getTypeInfo). They depend only on the type (sprites
+	 * created by the avatar are told apart one by one), so they are shared by the game and all
+	 * its copies.
+	 */
+	protected int[][] spriteTypeInfo;
+
 	/**
 	 * Groups of sprites in the level. Each element of the array is a collection
 	 * of sprites of a given type, which is also the index of the array.
@@ -199,6 +224,12 @@ public abstract class Game {
 	 */
 	protected ForwardModel fwdModel;
 
+	/**
+	 * True if fwdModel has been lent to an observation view, so it can't be
+	 * modified in place anymore.
+	 */
+	private boolean fwdModelShared;
+
 	/**
 	 * Maximum number of sprites in a game.
 	 */
@@ -242,6 +273,104 @@ public abstract class Game {
 	 */
 	protected PathFinder pathf;
 
+	/**
+	 * Flow fields of the sprite types chasers look for, indexed by type. The second
+	 * row holds the ones that include subtypes. Created when first needed.
+	 */
+	private FlowField[][] flowFields;
+
+	/**
+	 * Spatial indices of sprite types, indexed by type (see getSpatialIndex()
+	 * for the rows). Created when first needed.
+	 */
+	private SpatialIndex[][] spatialIndices;
+
+	/**
+	 * Number of times sprites of each type have been updated or added, to know when
+	 * flow fields and spatial indices are out of date.
+	 */
+	private int[] spriteChanges;
+
+	/**
+	 * True while all sprites created in the game use GridPhysics. Collisions are then
+	 * found by the cells sprites are in (see eventHandling()) instead of sweeping through
+	 * the sprites sorted by position.
+	 */
+	protected boolean gridCollisions = true;
+
+	/**
+	 * Minimum number of sprites collisions are checked against for the collision grid or
+	 * the sweep lists to be used. Fewer are just checked one by one.
+	 */
+	private static final int COLLISION_GRID_MIN_SPRITES = 16;
+
+	/**
+	 * Cells with the sprites collisions are checked against. Created when first needed.
+	 */
+	private CollisionGrid collisionGrid;
+
+	/**
+	 * Sprites sorted by position for games that don't use the collision grid, indexed by
+	 * the type collisions are checked against. Kept between game ticks, as sprites barely move.
+	 */
+	private SweepAndPrune[] sweeps;
+
+	/**
+	 * Incremented every time sprites may have moved: once per tick, and every time an effect
+	 * is executed. The collision grid and sweep lists are built again when it changes.
+	 */
+	private int collisionVersion;
+
+	/**
+	 * Sprites each effect has been applied to in the game tick effectSpritesTick, for effects
+	 * applied only once per tick to each sprite (see applyOncePerTick()). Effects are shared by
+	 * all the forward models of the game, so this is kept by each of them, not by the effect.
+	 */
+	protected IdentityHashMap<Effect, ArrayList<VGDLSprite>> effectSprites;
+	protected int effectSpritesTick = -1;
+
+	/**
+	 * Outcome reported by the effect being executed (see setScoreChange(), setApplyScore(),
+	 * setCount() and setCountElse()), and the effect that reported it, null if it didn't report
+	 * any. Effects are shared by all the forward models of the game, so what an execution did is
+	 * kept here instead of in the effect.
+	 */
+	private Effect reportingEffect;
+	private String effectScoreChange;
+	private boolean effectApplyScore, effectCount, effectCountElse;
+
+	/**
+	 * Positions of the sprites of each type when they were last checked for collisions.
+	 * Created when first needed.
+	 */
+	private SpriteMotion spriteMotion;
+
+	/**
+	 * Sprites of the game by their ID (see getSpriteById). It's built the first time it's
+	 * needed, and kept up to date as sprites are added and removed from then on. Null
+	 * until then.
+	 */
+	protected SpriteIdIndex spritesById;
+
+	/**
+	 * Version of the sprites involved (see motionVersion()) in each pass through a pair of
+	 * sprite types with a collision effect, and through a sprite type with an EOS effect, the
+	 * last time it found no collisions. -1 if it found some. While the version stays the same,
+	 * the pass won't find any either, so it's skipped.
+	 */
+	private int[] quietPairs;
+	private int[] quietEOS;
+
+	/**
+	 * Sprites a sprite collides with, reused for every sprite checked.
+	 */
+	private ArrayList<VGDLSprite> colliding = new ArrayList<VGDLSprite>();
+
+	/**
+	 * Rectangle of the screen, to check when sprites leave it.
+	 */
+	private Rectangle screenRect;
+
 	/**
 	 * Avatars last actions. Array for all avatars in the game. Index in array
 	 * corresponds to playerID.
@@ -355,6 +484,7 @@ public abstract class Game {
 		// by its id:
 		classConst = new Content[VGDLRegistry.GetInstance().numSpriteTypes()];
 		templateSprites = new VGDLSprite[classConst.length];
+		updateKinds = new byte[classConst.length];
 
 		// By default, we have 2 constructors:
 		Content wallConst = new SpriteContent("wall", "Immovable");
@@ -742,6 +872,7 @@ public abstract class Game {
 			// Create the space for the sprites and effects of this type.
 			spriteGroups[i].clear();
 		}
+		spritesById = null;
 
 		if (kill_list != null) {
 			kill_list.clear();
@@ -753,18 +884,182 @@ public abstract class Game {
 		for (int i = 0; i < templateSprites.length; ++i) {
 			templateSprites[i] = null;
 		}
+		Arrays.fill(updateKinds, UPDATE_ACTIVE);
 
 		historicEvents.clear();
+		effectSprites = null;
+		effectSpritesTick = -1;
 
 		resetShieldEffects();
 	}
 
+	/**
+	 * Records that an effect is applied to a sprite in this game tick, for effects that must
+	 * only be applied once per tick to each sprite.
+	 *
+	 * @param effect
+	 *            effect applied.
+	 * @param sprite
+	 *            sprite it's applied to.
+	 * @return true if the effect hadn't been applied to the sprite yet in this tick.
+	 */
+	public boolean applyOncePerTick(Effect effect, VGDLSprite sprite) {
+		if (effectSprites == null)
+			effectSprites = new IdentityHashMap<Effect, ArrayList<VGDLSprite>>();
+		if (effectSpritesTick != gameTick) {
+			for (ArrayList<VGDLSprite> sprites : effectSprites.values())
+				sprites.clear();
+			effectSpritesTick = gameTick;
+		}
+
+		ArrayList<VGDLSprite> sprites = effectSprites.get(effect);
+		if (sprites == null) {
+			sprites = new ArrayList<VGDLSprite>();
+			effectSprites.put(effect, sprites);
+		}
+		if (sprites.contains(sprite))
+			return false;
+		sprites.add(sprite);
+		return true;
+	}
+
+	/**
+	 * Sets the score change of the effect being executed, for effects whose score change
+	 * depends on what they did. It replaces Effect.scoreChange for this execution only.
+	 *
+	 * @param effect
+	 *            effect being executed.
+	 * @param scoreChange
+	 *            score change, in the same format as Effect.scoreChange.
+	 */
+	public void setScoreChange(Effect effect, String scoreChange) {
+		startReport(effect);
+		effectScoreChange = scoreChange;
+	}
+
+	/**
+	 * Sets if the score change of the effect being executed is applied. It replaces
+	 * Effect.applyScore for this execution only.
+	 *
+	 * @param effect
+	 *            effect being executed.
+	 * @param applyScore
+	 *            true to apply the score change.
+	 */
+	public void setApplyScore(Effect effect, boolean applyScore) {
+		startReport(effect);
+		effectApplyScore = applyScore;
+	}
+
+	/**
+	 * Sets if the counters of the effect being executed are added. It replaces Effect.count
+	 * for this execution only.
+	 *
+	 * @param effect
+	 *            effect being executed.
+	 * @param count
+	 *            true to add the counters.
+	 */
+	public void setCount(Effect effect, boolean count) {
+		startReport(effect);
+		effectCount = count;
+	}
+
+	/**
+	 * Sets if the 'else' counters of the effect being executed are added. It replaces
+	 * Effect.countElse for this execution only.
+	 *
+	 * @param effect
+	 *            effect being executed.
+	 * @param countElse
+	 *            true to add the 'else' counters.
+	 */
+	public void setCountElse(Effect effect, boolean countElse) {
+		startReport(effect);
+		effectCountElse = countElse;
+	}
+
+	/**
+	 * Starts the outcome of an effect from its own values, the first time it reports
+	 * something in an execution.
+	 *
+	 * @param effect
+	 *            effect being executed.
+	 */
+	private void startReport(Effect effect) {
+		if (reportingEffect != effect) {
+			reportingEffect = effect;
+			effectScoreChange = effect.scoreChange;
+			effectApplyScore = effect.applyScore;
+			effectCount = effect.count;
+			effectCountElse = effect.countElse;
+		}
+	}
+
+	/**
+	 * Gets the score change of the last effect executed for a player.
+	 *
+	 * @param ef
+	 *            effect executed.
+	 * @param playerID
+	 *            player affected.
+	 * @return the score change set by the effect while being executed, or its
+	 *         default one.
+	 */
+	private int getScoreChange(Effect ef, int playerID) {
+		if (reportingEffect == ef)
+			return ef.getScoreChange(effectScoreChange, playerID);
+		return ef.getScoreChange(playerID);
+	}
+
+	/**
+	 * Checks if the score change of the last effect executed is applied.
+	 */
+	private boolean appliesScore(Effect ef) {
+		return reportingEffect == ef ? effectApplyScore : ef.applyScore;
+	}
+
+	/**
+	 * Checks if the counters of the last effect executed are added.
+	 */
+	private boolean counts(Effect ef) {
+		return reportingEffect == ef ? effectCount : ef.count;
+	}
+
+	/**
+	 * Checks if the 'else' counters of the last effect executed are added.
+	 */
+	private boolean countsElse(Effect ef) {
+		return reportingEffect == ef ? effectCountElse : ef.countElse;
+	}
+
 	/**
 	 * Starts the forward model for the game.
 	 */
 	public void initForwardModel() {
 		fwdModel = new ForwardModel(this, 0);
 		fwdModel.update(this);
+		fwdModelShared = false;
+	}
+
+	/**
+	 * Updates the forward model with the current state of the game. If the model
+	 * was lent to an observation view, the view keeps it and a new one is created.
+	 */
+	private void updateForwardModel() {
+		releaseForwardModel();
+		fwdModel.update(this);
+	}
+
+	/**
+	 * Makes sure fwdModel is not referenced by any observation view before it is
+	 * modified. Views keep the old model, as it was when they were created.
+	 */
+	private void releaseForwardModel() {
+		if (fwdModelShared) {
+			fwdModel = fwdModel.successor(this);
+			fwdModelShared = false;
+		}
 	}
 
 	/**
@@ -808,9 +1103,15 @@ public abstract class Game {
 		sprite.spriteID = nextSpriteID;
 		spriteGroups[itype].addSprite(nextSpriteID++, sprite);
 		num_sprites++;
+		if (spritesById != null)
+			spritesById.put(sprite);
+		spriteChanged(sprite);
 
 		if (sprite.is_stochastic)
 			this.is_stochastic = true;
+
+		if (!(sprite.physics instanceof GridPhysics))
+			this.gridCollisions = false;
 	}
 
 	/**
@@ -829,6 +1130,25 @@ public abstract class Game {
 		return acum;
 	}
 
+	/**
+	 * Gets a sprite of the game by its ID, in constant time.
+	 *
+	 * @param spriteId
+	 *            ID of the sprite (as in VGDLSprite.spriteID or Observation.obsID).
+	 * @return the sprite, or null if there is no sprite with that ID in the game.
+	 */
+	public VGDLSprite getSpriteById(int spriteId) {
+		if (spritesById == null) {
+			spritesById = new SpriteIdIndex(num_sprites);
+			for (SpriteGroup group : spriteGroups) {
+				ArrayList<VGDLSprite> sprites = group.getSprites();
+				for (int i = 0; i < sprites.size(); ++i)
+					spritesById.put(sprites.get(i));
+			}
+		}
+		return spritesById.get(spriteId);
+	}
+
 	/**
 	 * Returns an arraylist of subtypes of the given parent type.
 	 *
@@ -874,7 +1194,7 @@ public abstract class Game {
 		}
 
 		// Update the forward model for the game state sent to the controller.
-		fwdModel.update(this);
+		updateForwardModel();
 
 		return handleResult();
 	}
@@ -970,7 +1290,7 @@ public abstract class Game {
 		}
 
 		// Update the forward model for the game state sent to the controller.
-		fwdModel.update(this);
+		updateForwardModel();
 
 		return handleResult();
 	}
@@ -1018,7 +1338,7 @@ public abstract class Game {
 
 
 		// Update the forward model for the game state sent to the controller.
-		fwdModel.update(this);
+		updateForwardModel();
 
 		return handleResult();
 	}
@@ -1082,6 +1402,9 @@ public abstract class Game {
 
 		// Initialize state observation (sets all non-volatile references).
 		initForwardModel();
+
+		// Observations given to the agents derive their generators from the game seed.
+		fwdModel.setNewSeed(randomSeed);
 	}
 
 	/**
@@ -1094,12 +1417,17 @@ public abstract class Game {
 
 		// Update our state observation (forward model) with the information of
 		// the current game state.
-		fwdModel.update(this);
+		updateForwardModel();
 		// System.out.println(avatars[0].rect);
 
+		// A dynamic pathfinder follows the obstacles of the real game.
+		if (pathf != null && pathf.dynamic)
+			pathf.updateObstacles(fwdModel);
+
 		// Execute a game cycle:
 		this.tick(); // update for all entities.
 		this.eventHandling(); // handle events such collisions.
+		releaseForwardModel();
 		this.clearAll(fwdModel); // clear all additional data, including dead
 		// sprites.
 		this.terminationHandling(); // check for game termination.
@@ -1356,11 +1684,14 @@ public abstract class Game {
 	 * Avatar is always updated first. Doesn't update disabled sprites.
 	 */
 	protected void tick() {
+		spritesChanged();
+
 		// Now, do all of the avatars.
 		for (int i = 0; i < no_players; i++) {
 			if (avatars[i] != null && !avatars[i].is_disabled()) {
 				avatars[i].preMovement();
 				avatars[i].updateAvatar(this, true, null);
+				spriteChanged(avatars[i]);
 			} else if (avatars[i] == null) {
 				System.out.println(gameTick + ": Something went wrong, no avatar, ID = " + i);
 			}
@@ -1371,18 +1702,80 @@ public abstract class Game {
 		int spriteOrderCount = spriteOrder.length;
 		for (int i = spriteOrderCount - 1; i >= 0; --i) {
 			int spriteTypeInt = spriteOrder[i];
+			if (tickStaticType(spriteTypeInt))
+				continue;
+
 			ArrayList<VGDLSprite> spritesList = spriteGroups[spriteTypeInt].getSprites();
 			if (spritesList != null)
 				for (VGDLSprite sp : spritesList) {
 					if (!(sp instanceof MovingAvatar) && !sp.is_disabled()) {
 						sp.preMovement();
 						sp.update(this);
+						spriteChanged(sp);
 					}
 				}
 
 		}
 	}
 
+	/**
+	 * Updates the sprites of a type that don't move or change by themselves (see
+	 * updateKinds). All preMovement() and update() would do for them is bringing lastrect
+	 * up to date, counting the ticks since they last moved and counting down their time to
+	 * live, so only that is done.
+	 *
+	 * @param itype
+	 *            type of the sprites.
+	 * @return false if the sprites of the type need the full update.
+	 */
+	protected boolean tickStaticType(int itype) {
+		byte kind = updateKinds[itype];
+		if (kind == UPDATE_ACTIVE)
+			return false;
+
+		ArrayList<VGDLSprite> spritesList = spriteGroups[itype].getSprites();
+		for (int i = 0; i < spritesList.size(); ++i) {
+			VGDLSprite sp = spritesList.get(i);
+			if (sp.is_disabled())
+				continue;
+
+			// Effects may have moved them since the last tick.
+			Rectangle r = sp.rect, last = sp.lastrect;
+			if (last.x != r.x || last.y != r.y || last.width != r.width || last.height != r.height)
+				last.setBounds(r);
+			sp.lastmove++;
+			sp.frameRemaining--;
+			if (kind == UPDATE_TIMER)
+				sp.update(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Works out how the sprites of a type must be updated by tick(). Only sprites
+	 * that have neither passive movement nor images to animate, and whose class
+	 * updates them as VGDLSprite does, can skip preMovement() and update().
+	 *
+	 * @param sprite
+	 *            sprite of the type, as created from its definition.
+	 * @return the kind of update of the type.
+	 */
+	private static byte getUpdateKind(VGDLSprite sprite) {
+		if (!(sprite.is_static || sprite.only_active) || !sprite.images.isEmpty()
+				|| sprite instanceof MovingAvatar)
+			return UPDATE_ACTIVE;
+		try {
+			Class<?> spriteClass = sprite.getClass();
+			if (spriteClass.getMethod("update", Game.class).getDeclaringClass() != VGDLSprite.class
+					|| spriteClass.getMethod("preMovement").getDeclaringClass() != VGDLSprite.class
+					|| spriteClass.getMethod("updatePassive").getDeclaringClass() != VGDLSprite.class)
+				return UPDATE_ACTIVE;
+		} catch (NoSuchMethodException e) {
+			return UPDATE_ACTIVE;
+		}
+		return sprite.timeToLive > -1 ? UPDATE_TIMER : UPDATE_STATIC;
+	}
+
 	/**
 	 * Handles collisions and triggers events.
 	 */
@@ -1392,6 +1785,9 @@ public abstract class Game {
 		// collisions.
 		boolean noSprites[] = new boolean[spriteGroups.length];
 
+		// Sprites have moved since collisions were last checked.
+		collisionVersion++;
+
 		// First, check the effects that are triggered in a timely manner.
 		while (timeEffects.size() > 0 && timeEffects.first().nextExecution <= gameTick) {
 			TimeEffect ef = timeEffects.pollFirst();
@@ -1403,13 +1799,15 @@ public abstract class Game {
 				if (intId == -1) {
 					// With no sprite, the effect is independent from particular
 					// sprites.
+					reportingEffect = null;
 					ef.execute(null, null, this);
+					collisionVersion++;
 					exec = true;
 
 					// Affect score for all players:
-					if (ef.applyScore) {
+					if (appliesScore(ef)) {
 						for (int i = 0; i < no_players; i++) {
-							avatars[i].addScore(ef.getScoreChange(i));
+							avatars[i].addScore(getScoreChange(ef, i));
 						}
 					}
 
@@ -1444,32 +1842,51 @@ public abstract class Game {
 		// Secondly, we handle single sprite events (EOS). Take each sprite
 		// itype that has
 		// a EOS effect defined.
+		int numPasses = 0;
+		for (Integer intId : definedEOSEffects)
+			numPasses += eosEffects[intId].size();
+		quietEOS = quietPasses(quietEOS, numPasses);
+
+		int pass = 0;
 		for (Integer intId : definedEOSEffects) {
 			// For each effect that this sprite has assigned.
 			for (Effect ef : eosEffects[intId]) {
 				// Take all the subtypes in the hierarchy of this sprite.
 				ArrayList<Integer> allTypes = iSubTypes[intId];
-				if (ef.enabled)
-					for (Integer itype : allTypes) {
-						// Add all sprites of this subtype to the list of
-						// sprites.
-						// These are sprites that could potentially collide with
-						// EOS
-						Collection<VGDLSprite> sprites = this.getSprites(itype);
-						try{
-							for (VGDLSprite sp : sprites) {
-								// Check if they are at the edge to trigger the
-								// effect. Also check that they
-								// are not dead (could happen in this same cycle).
-								if (isAtEdge(sp.rect) && !kill_list.contains(sp) && !sp.is_disabled()) {
+				int thisPass = pass++;
+
+				if (!ef.enabled)
+					continue;
+
+				// No sprite can be at the edge if none was and none has moved since.
+				if (quietEOS[thisPass] != -1 && quietEOS[thisPass] == motionVersion(allTypes))
+					continue;
+
+				boolean quiet = true;
+				for (Integer itype : allTypes) {
+					// Add all sprites of this subtype to the list of
+					// sprites.
+					// These are sprites that could potentially collide with
+					// EOS
+					Collection<VGDLSprite> sprites = this.getSprites(itype);
+					try{
+						for (VGDLSprite sp : sprites) {
+							// Check if they are at the edge to trigger the
+							// effect. Also check that they
+							// are not dead (could happen in this same cycle).
+							if (isAtEdge(sp.rect)) {
+								quiet = false;
+								if (!kill_list.contains(sp) && !sp.is_disabled())
 									executeEffect(ef, sp, null);
-								}
 							}
 						}
-						catch(ConcurrentModificationException e){
-							Logger.getInstance().addMessage(new Message(Message.WARNING, "you can't spawn sprites outside of the screen."));
-						}
 					}
+					catch(ConcurrentModificationException e){
+						quiet = false;
+						Logger.getInstance().addMessage(new Message(Message.WARNING, "you can't spawn sprites outside of the screen."));
+					}
+				}
+				quietEOS[thisPass] = quiet ? motionVersion(allTypes) : -1;
 			}
 
 		}
@@ -1477,10 +1894,17 @@ public abstract class Game {
 		// Now, we handle events between pairs of sprites, for each pair of
 		// sprites that
 		// has a paired effect defined:
+		numPasses = 0;
+		for (Pair<Integer, Integer> p : definedEffects)
+			numPasses += collisionEffects[p.first][p.second].size();
+		quietPairs = quietPasses(quietPairs, numPasses);
+
+		pass = 0;
 		for (Pair<Integer, Integer> p : definedEffects) {
 			// We iterate over the (potential) multiple effects that these
 			// two sprites could have defined between them.
 			for (Effect ef : collisionEffects[p.first][p.second]) {
+				int thisPass = pass++;
 				if (ef.enabled) {
 
 					if (shieldedEffects[p.first].size() > 0) {
@@ -1488,30 +1912,64 @@ public abstract class Game {
 							continue;
 					}
 
+					// Sprites that didn't collide won't collide either if none has moved since.
+					ArrayList<Integer> allTypes1 = iSubTypes[p.first];
+					ArrayList<Integer> allTypes2 = iSubTypes[p.second];
+					if (quietPairs[thisPass] != -1
+							&& quietPairs[thisPass] == motionVersion(allTypes1) + motionVersion(allTypes2))
+						continue;
+
 					ArrayList<VGDLSprite> firstx = new ArrayList<VGDLSprite>();
 					ArrayList<VGDLSprite> secondx = new ArrayList<VGDLSprite>();
 
-					ArrayList<Integer> allTypes1 = iSubTypes[p.first];
 					for (int i : allTypes1) {
 						firstx.addAll(getSprites(i));
 					}
-					ArrayList<Integer> allTypes2 = iSubTypes[p.second];
 					for (int j : allTypes2) {
 						secondx.addAll(getSprites(j));
 					}
 
-					ArrayList<VGDLSprite> new_secondx = new ArrayList<VGDLSprite>();
+					// Each sprite is only checked against the ones in its cells (grid games) or
+					// the ones that overlap it horizontally (any other game).
+					boolean broadPhase = firstx.size() > 1 && secondx.size() >= COLLISION_GRID_MIN_SPRITES;
+					if (broadPhase && gridCollisions && collisionGrid == null)
+						collisionGrid = new CollisionGrid(size.width, size.height, block_size);
+					if (broadPhase && !gridCollisions) {
+						if (sweeps == null)
+							sweeps = new SweepAndPrune[spriteGroups.length];
+						if (sweeps[p.second] == null)
+							sweeps[p.second] = new SweepAndPrune();
+					}
 
+					// Some sprites do more than checking rectangles when looking for collisions,
+					// so passes with them always run.
+					boolean quiet = true;
 					for (VGDLSprite s1 : firstx) {
-						new_secondx = new ArrayList<VGDLSprite>();
-
-						for (VGDLSprite s2 : secondx) {
-							if ((s1 != s2 && s1.intersects(s2))) {
-								new_secondx.add(s2);
+						if (quiet && CollisionGrid.hasOwnIntersects(s1))
+							quiet = false;
+
+						// Both are built again after effects are executed, as they may move sprites.
+						if (broadPhase && gridCollisions) {
+							if (!collisionGrid.isBuilt(p.second, collisionVersion))
+								collisionGrid.build(p.second, collisionVersion, secondx);
+							collisionGrid.getColliding(s1, colliding);
+						} else if (broadPhase) {
+							SweepAndPrune sweep = sweeps[p.second];
+							if (!sweep.isBuilt(collisionVersion))
+								sweep.build(collisionVersion, secondx);
+							sweep.getColliding(s1, colliding);
+						} else {
+							colliding.clear();
+							for (VGDLSprite s2 : secondx) {
+								if ((s1 != s2 && s1.intersects(s2))) {
+									colliding.add(s2);
+								}
 							}
 						}
 
-						if(new_secondx.size() > 0) {
+						if(colliding.size() > 0) {
+							quiet = false;
+							ArrayList<VGDLSprite> new_secondx = new ArrayList<VGDLSprite>(colliding);
 							if (ef.inBatch) {
 								executeEffectBatch(ef, s1, new_secondx);
 							} else {
@@ -1524,15 +1982,47 @@ public abstract class Game {
 							}
 						}
 					}
+					quietPairs[thisPass] = quiet ? motionVersion(allTypes1) + motionVersion(allTypes2) : -1;
 				}
 			}
 		}
 
 	}
 
+	/**
+	 * Gets the version of the positions of the sprites of some types. It changes every
+	 * time any of them moves, appears or disappears (see SpriteMotion).
+	 * @param types sprite types to check.
+	 * @return the version of their positions.
+	 */
+	private int motionVersion(ArrayList<Integer> types) {
+		if (spriteMotion == null)
+			spriteMotion = new SpriteMotion(spriteGroups.length);
+		int version = 0;
+		for (int itype : types)
+			version += spriteMotion.version(itype, collisionVersion, spriteGroups[itype].getSpriteIterator());
+		return version;
+	}
+
+	/**
+	 * Makes sure there is a version for each pass through sprite types in eventHandling().
+	 * @param quiet current versions of the passes, null if there are none yet.
+	 * @param numPasses number of passes.
+	 * @return the versions, all -1 if new.
+	 */
+	private int[] quietPasses(int[] quiet, int numPasses) {
+		if (quiet == null || quiet.length != numPasses) {
+			quiet = new int[numPasses];
+			Arrays.fill(quiet, -1);
+		}
+		return quiet;
+	}
+
 
 	private void executeEffectBatch(Effect ef, VGDLSprite s1, ArrayList<VGDLSprite> s2list) {
 		// There is a collision. Apply the effect.
+		collisionVersion++;
+		reportingEffect = null;
 		int batchCount = ef.executeBatch(s1, s2list, this);
 		if(batchCount == -1)
 		{
@@ -1541,10 +2031,10 @@ public abstract class Game {
 		}
 
 		// Affect score:
-		if (ef.applyScore) {
+		if (appliesScore(ef)) {
 			// apply scores for all avatars
 			for (int i = 0; i < no_players; i++) {
-				double multScore = ef.getScoreChange(i) * batchCount;
+				double multScore = getScoreChange(ef, i) * batchCount;
 				avatars[i].addScore(multScore);
 			}
 		}
@@ -1554,14 +2044,14 @@ public abstract class Game {
 			for(VGDLSprite s2 : s2list)
 				addEvent(s1, s2);
 
-		if (ef.count) {
+		if (counts(ef)) {
 			for (int i = 0; i < no_counters; i++) {
 				double multCounter = ef.getCounter(i) * batchCount;
 				this.counter[i] += multCounter;
 			}
 		}
 
-		if (ef.countElse) {
+		if (countsElse(ef)) {
 			for (int i = 0; i < no_counters; i++) {
 				double multElseCounter = ef.getCounterElse(i) * batchCount;
 				this.counter[i] += multElseCounter;
@@ -1571,13 +2061,15 @@ public abstract class Game {
 
 	private void executeEffect(Effect ef, VGDLSprite s1, VGDLSprite s2) {
 		// There is a collision. Apply the effect.
+		collisionVersion++;
+		reportingEffect = null;
 		ef.execute(s1, s2, this);
 
 		// Affect score:
-		if (ef.applyScore) {
+		if (appliesScore(ef)) {
 			// apply scores for all avatars
 			for (int i = 0; i < no_players; i++) {
-				avatars[i].addScore(ef.getScoreChange(i));
+				avatars[i].addScore(getScoreChange(ef, i));
 			}
 		}
 
@@ -1585,13 +2077,13 @@ public abstract class Game {
 		if (s1 != null && s2 != null)
 			addEvent(s1, s2);
 
-		if (ef.count) {
+		if (counts(ef)) {
 			for (int i = 0; i < no_counters; i++) {
 				this.counter[i] += ef.getCounter(i);
 			}
 		}
 
-		if (ef.countElse) {
+		if (countsElse(ef)) {
 			for (int i = 0; i < no_counters; i++) {
 				this.counter[i] += ef.getCounterElse(i);
 			}
@@ -1624,8 +2116,9 @@ public abstract class Game {
 	 * @return true if rect is at the edge of the screen.
 	 */
 	private boolean isAtEdge(Rectangle rect) {
-		Rectangle r = new Rectangle(screenSize);
-		if (!r.contains(rect)) {
+		if (screenRect == null || screenRect.width != screenSize.width || screenRect.height != screenSize.height)
+			screenRect = new Rectangle(screenSize);
+		if (!screenRect.contains(rect)) {
 			return true;
 		}
 		return false;
@@ -1668,6 +2161,8 @@ public abstract class Game {
 		for (VGDLSprite sprite : kill_list) {
 			int spriteType = sprite.getType();
 			this.spriteGroups[spriteType].removeSprite(sprite);
+			if (spritesById != null)
+				spritesById.remove(sprite);
 			if (fm != null) {
 				fm.removeSpriteObservation(sprite);
 			}
@@ -1682,6 +2177,7 @@ public abstract class Game {
 
 		}
 		kill_list.clear();
+		spritesChanged();
 
 		for (int j = 0; j < spriteGroups.length; ++j) {
 			bucketList[j].clear();
@@ -1789,6 +2285,7 @@ public abstract class Game {
 
 				// save a copy as template object
 				templateSprites[itype] = newSprite.copy();
+				updateKinds[itype] = getUpdateKind(newSprite);
 			} else // we already have a template, so simply copy that one
 			{
 				newSprite = templateSprites[itype].copy();
@@ -1858,6 +2355,291 @@ public abstract class Game {
 		}
 	}
 
+	/**
+	 * Finds the sprites closest to another one among the sprites of a type, as
+	 * measured by the physics of the sprite. The result is the same as going
+	 * through all of them in order (keeping all sprites at the minimum distance),
+	 * but the flow field or the spatial index of the type are used instead when
+	 * they are up to date. They are only built once callers have spent more time
+	 * going through all sprites than it takes to build them, and they are reused
+	 * until any of those sprites changes or a new game tick starts.
+	 *
+	 * @param sprite
+	 *            sprite to measure distances from.
+	 * @param itype
+	 *            type of the sprites to look among.
+	 * @param subtypes
+	 *            true to look among the sprites of the type and all its
+	 *            subtypes (as in getSubSpritesGroup()), false for only the sprites
+	 *            of the type (as in getSpriteGroup()).
+	 * @param closest
+	 *            filled with the closest sprites, in the order of the group.
+	 */
+	public void getClosestSprites(VGDLSprite sprite, int itype, boolean subtypes, ArrayList<VGDLSprite> closest) {
+		closest.clear();
+		int row = subtypes ? 1 : 0;
+		int numSprites = countSprites(itype, subtypes);
+
+		// The flow field knows the closest sprite, unless several are equally close.
+		if (sprite.physics instanceof GridPhysics) {
+			FlowField field = getFlowField(itype, row, numSprites);
+			VGDLSprite sp = (field == null) ? null : field.getClosest(sprite.rect);
+			if (sp != null) {
+				closest.add(sp);
+				return;
+			}
+		}
+
+		SpatialIndex index = getSpatialIndex(itype, row, numSprites, false);
+		if (index != null) {
+			index.getClosest(sprite.rect, sprite.physics, closest);
+			return;
+		}
+
+		double bestDist = Double.MAX_VALUE;
+		Iterator<VGDLSprite> spriteIt = subtypes ? getSubSpritesGroup(itype) : getSpriteGroup(itype);
+		if (spriteIt != null)
+			while (spriteIt.hasNext()) {
+				VGDLSprite s = spriteIt.next();
+				double distance = sprite.physics.distance(sprite.rect, s.rect);
+				if (distance < bestDist) {
+					bestDist = distance;
+					closest.clear();
+					closest.add(s);
+				} else if (distance == bestDist) {
+					closest.add(s);
+				}
+			}
+	}
+
+	/**
+	 * Finds the sprites of a type closest to another one among those in its line
+	 * of sight: the same column (looking up or down) or row (looking left or
+	 * right), on the side it is looking at. If obstacles are given, the line of
+	 * sight is stepped through cell by cell until the first cell with any of them.
+	 *
+	 * @param sprite
+	 *            sprite looking.
+	 * @param dir
+	 *            direction it looks at. Nothing is seen in any direction other
+	 *            than the four base ones.
+	 * @param itype
+	 *            type of the sprites to look for.
+	 * @param subtypes
+	 *            true to look for the sprites of the type and all its subtypes
+	 *            (as in getSubSpritesGroup()), false for only the sprites of the
+	 *            type (as in getSpriteGroup()).
+	 * @param obstacles
+	 *            types of the sprites (and their subtypes) that block the sight.
+	 *            Can be null.
+	 * @param seen
+	 *            filled with the closest sprites seen, in the order of the group.
+	 */
+	public void getSpritesInSight(VGDLSprite sprite, Direction dir, int itype, boolean subtypes, int[] obstacles,
+			ArrayList<VGDLSprite> seen) {
+		seen.clear();
+		if (dir == null || !(dir.equals(Types.DDOWN) || dir.equals(Types.DUP) || dir.equals(Types.DLEFT)
+				|| dir.equals(Types.DRIGHT)))
+			return;
+		int dx = (int) dir.x(), dy = (int) dir.y();
+
+		int row = subtypes ? 1 : 0;
+		boolean blocking = (obstacles != null && obstacles.length > 0);
+		SpatialIndex index = getSpatialIndex(itype, row, countSprites(itype, subtypes), blocking);
+		if (index != null) {
+			SpatialIndex[] blockers = new SpatialIndex[blocking ? obstacles.length : 0];
+			for (int i = 0; i < blockers.length; ++i)
+				blockers[i] = getSpatialIndex(obstacles[i], 2, 0, true);
+			index.getClosestInSight(sprite.rect, dx, dy, sprite.physics, blockers, seen);
+			return;
+		}
+
+		double bestDist = Double.MAX_VALUE;
+		Iterator<VGDLSprite> spriteIt = subtypes ? getSubSpritesGroup(itype) : getSpriteGroup(itype);
+		if (spriteIt != null)
+			while (spriteIt.hasNext()) {
+				VGDLSprite s = spriteIt.next();
+				if (!SpatialIndex.inSight(sprite.rect, dx, dy, s.rect))
+					continue;
+				double distance = sprite.physics.distance(sprite.rect, s.rect);
+				if (distance < bestDist) {
+					bestDist = distance;
+					seen.clear();
+					seen.add(s);
+				} else if (distance == bestDist) {
+					seen.add(s);
+				}
+			}
+	}
+
+	/**
+	 * Gets the k sprites of a type (or its subtypes) closest to a position,
+	 * measuring Euclidean distances to their positions.
+	 *
+	 * @param position
+	 *            position to measure distances from.
+	 * @param itype
+	 *            type of the sprites.
+	 * @param k
+	 *            maximum number of sprites to return.
+	 * @return the closest sprites, sorted by ascending distance.
+	 */
+	public ArrayList<VGDLSprite> getNearestSprites(Vector2d position, int itype, int k) {
+		ArrayList<VGDLSprite> result = new ArrayList<VGDLSprite>();
+		getSpatialIndex(itype, 2, 0, true).getNearest(position, k, result);
+		return result;
+	}
+
+	/**
+	 * Gets the sprites of a type (or its subtypes) within a distance of a
+	 * position, measuring Euclidean distances to their positions.
+	 *
+	 * @param position
+	 *            position to measure distances from.
+	 * @param itype
+	 *            type of the sprites.
+	 * @param radius
+	 *            maximum distance, in pixels.
+	 * @return the sprites in the radius, sorted by ascending distance.
+	 */
+	public ArrayList<VGDLSprite> getSpritesInRadius(Vector2d position, int itype, double radius) {
+		ArrayList<VGDLSprite> result = new ArrayList<VGDLSprite>();
+		getSpatialIndex(itype, 2, 0, true).getInRadius(position, radius, result);
+		return result;
+	}
+
+	/**
+	 * Gets the flow field of a group of sprites, computing it if it is out of date
+	 * and the scans it saves are worth it.
+	 *
+	 * @param itype
+	 *            type of the sprites.
+	 * @param row
+	 *            0 for the sprites of the type, 1 to include subtypes.
+	 * @param numSprites
+	 *            number of sprites in the group.
+	 * @return the flow field, or null if it is not computed.
+	 */
+	private FlowField getFlowField(int itype, int row, int numSprites) {
+		if (flowFields == null)
+			flowFields = new FlowField[2][spriteGroups.length];
+		FlowField field = flowFields[row][itype];
+		if (field == null) {
+			field = new FlowField(screenSize.width / block_size, screenSize.height / block_size, block_size);
+			flowFields[row][itype] = field;
+		}
+
+		int version = spriteVersion(itype, row != 0);
+		if (field.version != version)
+			field.reset(version);
+
+		if (!field.isComputed()) {
+			field.scanWork += numSprites;
+			if (field.scanWork < field.numCells())
+				return null;
+			field.compute(row != 0 ? getSubSpritesGroup(itype) : getSpriteGroup(itype));
+		}
+		return field;
+	}
+
+	/**
+	 * Gets the spatial index of a group of sprites, building it if it is out of date
+	 * and it is required or the scans it saves are worth it.
+	 *
+	 * @param itype
+	 *            type of the sprites.
+	 * @param row
+	 *            0 for the sprites of the type, 1 to include subtypes (as in
+	 *            getSubSpritesGroup()), 2 to include subtypes without repeating
+	 *            any sprite.
+	 * @param numSprites
+	 *            number of sprites in the group.
+	 * @param required
+	 *            true to build it in any case.
+	 * @return the spatial index, or null if it is not built.
+	 */
+	protected SpatialIndex getSpatialIndex(int itype, int row, int numSprites, boolean required) {
+		if (spatialIndices == null)
+			spatialIndices = new SpatialIndex[3][spriteGroups.length];
+		SpatialIndex index = spatialIndices[row][itype];
+		if (index == null) {
+			index = new SpatialIndex(screenSize.width / block_size, screenSize.height / block_size, block_size);
+			spatialIndices[row][itype] = index;
+		}
+
+		int version = spriteVersion(itype, row != 0);
+		if (index.version != version)
+			index.reset(version);
+
+		if (!index.isBuilt()) {
+			index.scanWork += numSprites;
+			if (!required && index.scanWork < index.numCells() + numSprites)
+				return null;
+
+			if (row == 0)
+				index.build(getSpriteGroup(itype));
+			else if (row == 1)
+				index.build(getSubSpritesGroup(itype));
+			else {
+				SpriteGroup allSprites = new SpriteGroup(itype);
+				allSprites.addAllSprites(getSprites(itype));
+				for (Integer subtype : iSubTypes[itype])
+					if (subtype != itype)
+						allSprites.addAllSprites(getSprites(subtype));
+				index.build(allSprites.getSpriteIterator());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Number of sprites of a type, including its subtypes (as in getSubSpritesGroup()) or not.
+	 */
+	private int countSprites(int itype, boolean subtypes) {
+		int num = spriteGroups[itype].numSprites();
+		if (subtypes)
+			for (Integer subtype : iSubTypes[itype])
+				num += spriteGroups[subtype].numSprites();
+		return num;
+	}
+
+	/**
+	 * Version of the sprites of a type, including its subtypes or not. Any
+	 * change in those sprites gives a new version.
+	 */
+	private int spriteVersion(int itype, boolean subtypes) {
+		if (spriteChanges == null)
+			spritesChanged();
+		int version = spriteChanges[itype];
+		if (subtypes)
+			for (Integer subtype : iSubTypes[itype])
+				version += spriteChanges[subtype];
+		return version;
+	}
+
+	/**
+	 * Records that a sprite has been updated or added, so the flow fields and
+	 * spatial indices that include its type are out of date.
+	 *
+	 * @param sprite
+	 *            sprite that may have changed.
+	 */
+	protected void spriteChanged(VGDLSprite sprite) {
+		if (spriteChanges != null)
+			spriteChanges[sprite.getType()]++;
+	}
+
+	/**
+	 * Makes all flow fields and spatial indices out of date, as sprites may have
+	 * changed anywhere (i.e. a new game tick, or after handling collisions).
+	 */
+	protected void spritesChanged() {
+		if (spriteChanges == null)
+			spriteChanges = new int[spriteGroups.length];
+		for (int i = 0; i < spriteChanges.length; ++i)
+			spriteChanges[i]++;
+	}
+
 	/**
 	 * Gets an iterator for the collection of sprites for a particular sprite
 	 * type.
@@ -2150,6 +2932,42 @@ public abstract class Game {
 		return new StateObservationMulti(fwdModel.copy(), playerID);
 	}
 
+	/**
+	 * Returns a view of the current state, to be passed to the controllers on
+	 * each act() call. The view reads directly from the forward model of the
+	 * game, which is only copied if the controller advances the view or changes
+	 * its seed (copies of the view are regular observations). Controllers that
+	 * only read the state avoid the copy of the forward model every game tick.
+	 * <p/>
+	 * Reading a state updates the observations it keeps (i.e. the distances to
+	 * the reference of get*Positions(reference)), so the model is only lent to
+	 * one view per game tick. Any other view asked for in the same tick (i.e.
+	 * for the other players) gets its own copy of the model.
+	 *
+	 * @return the observation.
+	 */
+	public StateObservation getObservationView() {
+		if (fwdModelShared)
+			return new StateObservation(fwdModel.copy(), 0);
+		fwdModelShared = true;
+		return new StateObservation(fwdModel, 0, true);
+	}
+
+	/**
+	 * Returns a view of the current state for a player in a multi player game.
+	 * See getObservationView().
+	 *
+	 * @param playerID
+	 *            ID of the player that receives the view.
+	 * @return the observation.
+	 */
+	public StateObservationMulti getObservationMultiView(int playerID) {
+		if (fwdModelShared)
+			return new StateObservationMulti(fwdModel.copy(), playerID);
+		fwdModelShared = true;
+		return new StateObservationMulti(fwdModel, playerID, true);
+	}
+
 	/**
 	 * Returns the sampleRandom object
 	 *
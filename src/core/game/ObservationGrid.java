@@ -0,0 +1,430 @@
+package core.game;
+
+import tools.Vector2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Observations of the sprites of a forward model, by sprite ID, and the cells of the level
+ * each of them is in. Observations are kept in a table of slots, which also records the cells
+ * each one was put in, and each cell is a small list of slots inside one shared array, so moving
+ * an observation only shifts a few ints.
+ * <p/>
+ * The grid of ArrayList that agents receive (see ForwardModel.getObservationGrid) is only
+ * built the first time it's requested. From then on it's kept up to date along with the cells,
+ * as agents may keep it and read it again after the state changes.
+ */
+public class ObservationGrid
+{
+    /**
+     * Sprite ID that marks empty entries of the ID table.
+     */
+    private static final int NO_ID = -1;
+
+    /**
+     * Dimensions of the grid, in cells, and size of each cell in pixels.
+     */
+    private int width, height, blockSize;
+
+    /**
+     * Observations in each slot, and the slots that are free.
+     */
+    private Observation[] observations;
+    private int numSlots;
+    private int[] freeSlots;
+    private int numFree;
+
+    /**
+     * Cell (x * height + y) each observation was put in, or -1 if it's in none, and if it
+     * also overlaps the next column (1) and the next row (2).
+     */
+    private int[] slotCell;
+    private byte[] slotSpan;
+
+    /**
+     * Open addressing table from sprite ID to slot. Empty entries have NO_ID as key.
+     */
+    private int[] keys;
+    private int[] keySlots;
+    private int numKeys;
+
+    /**
+     * Slots in each cell (x * height + y) are pool[cellStart[cell] .. cellStart[cell]+cellSize[cell]-1].
+     * Each cell has room for cellCapacity[cell] slots, and moves to the end of the pool when it
+     * runs out of it. Room left behind is reclaimed when the pool is full.
+     */
+    private int[] cellStart;
+    private int[] cellSize;
+    private int[] cellCapacity;
+    private int[] pool;
+    private int poolEnd;
+
+    /**
+     * Grid of lists given to agents, or null if it hasn't been requested.
+     */
+    private ArrayList<Observation>[][] view;
+
+    public ObservationGrid(int width, int height, int blockSize)
+    {
+        this.width = width;
+        this.height = height;
+        this.blockSize = blockSize;
+        observations = new Observation[16];
+        freeSlots = new int[16];
+        slotCell = new int[16];
+        slotSpan = new byte[16];
+        keys = new int[32];
+        keySlots = new int[32];
+        Arrays.fill(keys, NO_ID);
+        cellStart = new int[width * height];
+        cellSize = new int[width * height];
+        cellCapacity = new int[width * height];
+        pool = new int[64];
+    }
+
+    /**
+     * Indicates if the grid has the dimensions given.
+     */
+    boolean hasSize(int width, int height, int blockSize)
+    {
+        return this.width == width && this.height == height && this.blockSize == blockSize;
+    }
+
+    int getWidth()
+    {
+        return width;
+    }
+
+    int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Removes all observations, keeping the memory of the grid (and the lists of the view).
+     */
+    void clear()
+    {
+        Arrays.fill(observations, 0, numSlots, null);
+        numSlots = 0;
+        numFree = 0;
+        Arrays.fill(keys, NO_ID);
+        numKeys = 0;
+        Arrays.fill(cellSize, 0);
+        if(view != null)
+            for(ArrayList<Observation>[] column : view)
+                for(ArrayList<Observation> cell : column)
+                    cell.clear();
+    }
+
+    /**
+     * Gets the observation of a sprite.
+     * @param spriteId ID of the sprite.
+     * @return its observation, or null if it has none.
+     */
+    Observation get(int spriteId)
+    {
+        int slot = slotOf(spriteId);
+        return slot < 0 ? null : observations[slot];
+    }
+
+    /**
+     * Gets the observation in a slot.
+     * @param slot slot of the observation (see slotOf()).
+     * @return the observation.
+     */
+    Observation getInSlot(int slot)
+    {
+        return observations[slot];
+    }
+
+    /**
+     * Sets the observation of a sprite. It's not added to any cell.
+     * @param spriteId ID of the sprite.
+     * @param obs its observation.
+     * @return the slot of the observation.
+     */
+    int put(int spriteId, Observation obs)
+    {
+        int slot = slotOf(spriteId);
+        if(slot < 0)
+        {
+            if(numFree > 0)
+                slot = freeSlots[--numFree];
+            else
+            {
+                if(numSlots == observations.length)
+                {
+                    observations = Arrays.copyOf(observations, 2 * numSlots);
+                    freeSlots = Arrays.copyOf(freeSlots, 2 * numSlots);
+                    slotCell = Arrays.copyOf(slotCell, 2 * numSlots);
+                    slotSpan = Arrays.copyOf(slotSpan, 2 * numSlots);
+                }
+                slot = numSlots++;
+            }
+            slotCell[slot] = -1;
+            putKey(spriteId, slot);
+        }
+        observations[slot] = obs;
+        return slot;
+    }
+
+    /**
+     * Removes the observation of a sprite, and takes it out of its cells.
+     * @param spriteId ID of the sprite.
+     */
+    void remove(int spriteId)
+    {
+        int mask = keys.length - 1;
+        int k = hash(spriteId) & mask;
+        while(keys[k] != NO_ID && keys[k] != spriteId)
+            k = (k + 1) & mask;
+        if(keys[k] == NO_ID)
+            return;
+
+        int slot = keySlots[k];
+        unplace(slot);
+        observations[slot] = null;
+        freeSlots[numFree++] = slot;
+
+        //Moves back the entries that follow, so none is left behind the empty one.
+        keys[k] = NO_ID;
+        numKeys--;
+        for(int next = (k + 1) & mask; keys[next] != NO_ID; next = (next + 1) & mask)
+        {
+            int home = hash(keys[next]) & mask;
+            if(((next - home) & mask) >= ((next - k) & mask))
+            {
+                keys[k] = keys[next];
+                keySlots[k] = keySlots[next];
+                keys[next] = NO_ID;
+                k = next;
+            }
+        }
+    }
+
+    /**
+     * Gets the slot of the observation of a sprite.
+     * @param spriteId ID of the sprite.
+     * @return the slot, or -1 if the sprite has no observation.
+     */
+    int slotOf(int spriteId)
+    {
+        int mask = keys.length - 1;
+        for(int k = hash(spriteId) & mask; keys[k] != NO_ID; k = (k + 1) & mask)
+            if(keys[k] == spriteId)
+                return keySlots[k];
+        return -1;
+    }
+
+    /**
+     * Puts an observation in the cells a position overlaps, at the end of each one, taking
+     * it out of the cells it was in. Positions out of the level are in no cell.
+     * @param slot slot of the observation.
+     * @param position position of the sprite.
+     */
+    void place(int slot, Vector2d position)
+    {
+        unplace(slot);
+
+        int x = (int) position.x / blockSize;
+        boolean validX = x >= 0 && x < width;
+        boolean xPlus = (position.x % blockSize) > 0 && (x+1 < width);
+        int y = (int) position.y / blockSize;
+        boolean validY = y >= 0 && y < height;
+        boolean yPlus = (position.y % blockSize) > 0 && (y+1 < height);
+
+        if(validX && validY)
+        {
+            add(x, y, slot);
+            if(xPlus)
+                add(x+1, y, slot);
+            if(yPlus)
+                add(x, y+1, slot);
+            if(xPlus && yPlus)
+                add(x+1, y+1, slot);
+            slotCell[slot] = x * height + y;
+            slotSpan[slot] = (byte) ((xPlus ? 1 : 0) | (yPlus ? 2 : 0));
+        }
+    }
+
+    /**
+     * Takes an observation out of the cells it was put in.
+     * @param slot slot of the observation.
+     */
+    private void unplace(int slot)
+    {
+        int cell = slotCell[slot];
+        if(cell < 0)
+            return;
+        int x = cell / height, y = cell % height;
+        boolean xPlus = (slotSpan[slot] & 1) != 0, yPlus = (slotSpan[slot] & 2) != 0;
+        remove(x, y, slot);
+        if(xPlus)
+            remove(x+1, y, slot);
+        if(yPlus)
+            remove(x, y+1, slot);
+        if(xPlus && yPlus)
+            remove(x+1, y+1, slot);
+        slotCell[slot] = -1;
+    }
+
+    /**
+     * Adds an observation at the end of a cell.
+     * @param x column of the cell.
+     * @param y row of the cell.
+     * @param slot slot of the observation.
+     */
+    private void add(int x, int y, int slot)
+    {
+        int cell = x * height + y;
+        if(cellSize[cell] == cellCapacity[cell])
+            growCell(cell);
+        pool[cellStart[cell] + cellSize[cell]++] = slot;
+        if(view != null)
+            view[x][y].add(observations[slot]);
+    }
+
+    /**
+     * Removes an observation from a cell, keeping the order of the rest.
+     * @param x column of the cell.
+     * @param y row of the cell.
+     * @param slot slot of the observation.
+     */
+    private void remove(int x, int y, int slot)
+    {
+        int cell = x * height + y;
+        int start = cellStart[cell], end = start + cellSize[cell];
+        for(int i = start; i < end; ++i)
+        {
+            if(pool[i] == slot)
+            {
+                System.arraycopy(pool, i + 1, pool, i, end - i - 1);
+                cellSize[cell]--;
+                if(view != null)
+                    view[x][y].remove(i - start);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of observations in a cell.
+     */
+    int size(int x, int y)
+    {
+        return cellSize[x * height + y];
+    }
+
+    /**
+     * Checks if a cell holds an observation of any of the given sprite types.
+     * @param x column of the cell.
+     * @param y row of the cell.
+     * @param itypes tells which sprite types to look for.
+     * @return true if any observation in the cell is of one of the types.
+     */
+    boolean contains(int x, int y, IntPredicate itypes)
+    {
+        int cell = x * height + y;
+        for(int i = cellStart[cell]; i < cellStart[cell] + cellSize[cell]; ++i)
+        {
+            if(itypes.test(observations[pool[i]].itype))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the grid as lists of observations, building it the first time.
+     * @return the grid of observations, indexed by column and row.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ArrayList<Observation>[][] getView()
+    {
+        if(view == null)
+        {
+            view = new ArrayList[width][height];
+            for(int x = 0; x < width; ++x)
+            {
+                for(int y = 0; y < height; ++y)
+                {
+                    int cell = x * height + y;
+                    ArrayList<Observation> list = new ArrayList<Observation>(cellSize[cell]);
+                    for(int i = cellStart[cell]; i < cellStart[cell] + cellSize[cell]; ++i)
+                        list.add(observations[pool[i]]);
+                    view[x][y] = list;
+                }
+            }
+        }
+        return view;
+    }
+
+    private void putKey(int spriteId, int slot)
+    {
+        if(2 * (numKeys + 1) > keys.length)
+        {
+            int[] oldKeys = keys, oldSlots = keySlots;
+            keys = new int[2 * oldKeys.length];
+            keySlots = new int[2 * oldKeys.length];
+            Arrays.fill(keys, NO_ID);
+            numKeys = 0;
+            for(int k = 0; k < oldKeys.length; ++k)
+                if(oldKeys[k] != NO_ID)
+                    putKey(oldKeys[k], oldSlots[k]);
+        }
+
+        int mask = keys.length - 1;
+        int k = hash(spriteId) & mask;
+        while(keys[k] != NO_ID)
+            k = (k + 1) & mask;
+        keys[k] = spriteId;
+        keySlots[k] = slot;
+        numKeys++;
+    }
+
+    /**
+     * Moves a full cell to the end of the pool, with twice its room.
+     */
+    private void growCell(int cell)
+    {
+        int capacity = Math.max(4, 2 * cellCapacity[cell]);
+        if(poolEnd + capacity > pool.length)
+            compact(capacity);
+        System.arraycopy(pool, cellStart[cell], pool, poolEnd, cellSize[cell]);
+        cellStart[cell] = poolEnd;
+        cellCapacity[cell] = capacity;
+        poolEnd += capacity;
+    }
+
+    /**
+     * Packs all cells at the start of a pool with room for another 'extra' slots.
+     */
+    private void compact(int extra)
+    {
+        int used = 0;
+        for(int cell = 0; cell < cellCapacity.length; ++cell)
+            used += cellCapacity[cell];
+
+        int[] packed = new int[Math.max(pool.length, 2 * (used + extra))];
+        int end = 0;
+        for(int cell = 0; cell < cellCapacity.length; ++cell)
+        {
+            System.arraycopy(pool, cellStart[cell], packed, end, cellSize[cell]);
+            cellStart[cell] = end;
+            end += cellCapacity[cell];
+        }
+        pool = packed;
+        poolEnd = end;
+    }
+
+    /**
+     * IDs are consecutive, so they are scrambled to spread them in the table.
+     */
+    private static int hash(int spriteId)
+    {
+        int h = spriteId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,459 @@
+package core.game;
+
+import core.vgdl.VGDLSprite;
+import ontology.physics.Physics;
+import tools.Vector2d;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Uniform grid with the sprites of a type, bucketed by the cell their position (top-left
+ * corner) is in. Nearest sprite and radius queries only look at the cells around the
+ * position queried, ring by ring, and stop as soon as no sprite further out can be part
+ * of the result.
+ * <p/>
+ * Queries rely on distances being at least as large as the largest difference in x or y
+ * between two positions, which holds for GridPhysics (Manhattan) and ContinuousPhysics
+ * (Euclidean). Results are sorted by distance, and ties are kept in the order the sprites
+ * were in when the index was built, so they match a scan through the sprite group.
+ * <p/>
+ * Games keep one per sprite type that is queried, built when first needed after the
+ * sprites change (see Game.getSpatialIndex).
+ */
+public class SpatialIndex
+{
+    /**
+     * Dimensions of the level, in cells, and size of each cell in pixels.
+     */
+    private int width, height, blockSize;
+
+    /**
+     * Sprites of each cell (x * height + y) are in sprites[cellStart[cell] .. cellStart[cell+1]-1].
+     */
+    private int[] cellStart;
+
+    /**
+     * Sprites in the level, grouped by cell.
+     */
+    private VGDLSprite[] sprites;
+
+    /**
+     * Position of each sprite (in 'sprites') in the order the index was built from.
+     */
+    private int[] order;
+
+    /**
+     * Sprites out of the level, and their position in the order the index was built from.
+     * They are checked by all queries.
+     */
+    private ArrayList<VGDLSprite> outside;
+    private ArrayList<Integer> outsideOrder;
+
+    /**
+     * Number of sprites indexed.
+     */
+    private int numSprites;
+
+    /**
+     * True if the index is built for the current version of the sprites.
+     */
+    private boolean built;
+
+    /**
+     * Version of the sprites this index belongs to (see Game.getSpatialIndex).
+     */
+    int version;
+
+    /**
+     * Work spent by callers scanning all sprites since they last changed. The index is
+     * only built by those callers when it's larger than the cost of building it.
+     */
+    int scanWork;
+
+    /**
+     * Candidates found by a query, with their distances. Reused by all queries.
+     */
+    private ArrayList<VGDLSprite> candidates;
+    private double[] candidateDist;
+    private int[] candidateOrder;
+
+    public SpatialIndex(int width, int height, int blockSize)
+    {
+        this.width = width;
+        this.height = height;
+        this.blockSize = blockSize;
+        cellStart = new int[width * height + 1];
+        sprites = new VGDLSprite[0];
+        order = new int[0];
+        outside = new ArrayList<VGDLSprite>();
+        outsideOrder = new ArrayList<Integer>();
+        candidates = new ArrayList<VGDLSprite>();
+        candidateDist = new double[16];
+        candidateOrder = new int[16];
+        version = -1;
+    }
+
+    /**
+     * Discards the contents of the index, as sprites have changed.
+     * @param version new version of the sprites.
+     */
+    void reset(int version)
+    {
+        this.version = version;
+        built = false;
+        scanWork = 0;
+    }
+
+    /**
+     * Indicates if the index is built for the current sprites.
+     * @return true if it is.
+     */
+    boolean isBuilt()
+    {
+        return built;
+    }
+
+    /**
+     * Number of cells of the level, part of the cost of building the index.
+     * @return the number of cells.
+     */
+    int numCells()
+    {
+        return width * height;
+    }
+
+    /**
+     * Builds the index with the sprites received.
+     * @param spriteIt iterator over the sprites. It can be null if there are none.
+     */
+    void build(Iterator<VGDLSprite> spriteIt)
+    {
+        built = true;
+        outside.clear();
+        outsideOrder.clear();
+
+        ArrayList<VGDLSprite> all = new ArrayList<VGDLSprite>();
+        if(spriteIt != null) while(spriteIt.hasNext())
+            all.add(spriteIt.next());
+        numSprites = all.size();
+
+        //Counting sort by cell, keeping the original order inside each cell.
+        int[] cells = new int[numSprites];
+        Arrays.fill(cellStart, 0);
+        for(int i = 0; i < numSprites; ++i)
+        {
+            cells[i] = cellOf(all.get(i).rect.x, all.get(i).rect.y);
+            if(cells[i] == -1)
+            {
+                outside.add(all.get(i));
+                outsideOrder.add(i);
+            }else
+                cellStart[cells[i] + 1]++;
+        }
+        for(int c = 0; c < width * height; ++c)
+            cellStart[c + 1] += cellStart[c];
+
+        if(sprites.length < numSprites)
+        {
+            sprites = new VGDLSprite[numSprites];
+            order = new int[numSprites];
+        }
+        int[] next = Arrays.copyOf(cellStart, width * height);
+        for(int i = 0; i < numSprites; ++i)
+        {
+            if(cells[i] != -1)
+            {
+                int pos = next[cells[i]]++;
+                sprites[pos] = all.get(i);
+                order[pos] = i;
+            }
+        }
+    }
+
+    /**
+     * Gets the sprites closest to a rectangle, using the distance of the physics given.
+     * @param rect rectangle to measure distances from.
+     * @param physics physics to measure distances with.
+     * @param result filled with the closest sprites (all of them if several are
+     *               at the same distance), in the order the index was built from.
+     */
+    void getClosest(Rectangle rect, Physics physics, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        if(numSprites == 0)
+            return;
+
+        double bestDist = Double.MAX_VALUE;
+        candidates.clear();
+        for(int i = 0; i < outside.size(); ++i)
+            bestDist = addClosest(outside.get(i), outsideOrder.get(i), physics.distance(rect, outside.get(i).rect), bestDist);
+
+        int cx = clamp(rect.x, width), cy = clamp(rect.y, height);
+        int maxRing = Math.max(Math.max(cx, width - 1 - cx), Math.max(cy, height - 1 - cy));
+        for(int ring = 0; ring <= maxRing; ++ring)
+        {
+            //Sprites in the next ring are further than ring * blockSize.
+            if(candidates.size() > 0 && bestDist < (ring - 1) * (double) blockSize)
+                break;
+
+            for(int x = cx - ring; x <= cx + ring; ++x)
+            {
+                if(x < 0 || x >= width) continue;
+                int step = (x == cx - ring || x == cx + ring) ? 1 : 2 * ring;
+                for(int y = cy - ring; y <= cy + ring; y += Math.max(step, 1))
+                {
+                    if(y < 0 || y >= height) continue;
+                    int cell = x * height + y;
+                    for(int s = cellStart[cell]; s < cellStart[cell + 1]; ++s)
+                        bestDist = addClosest(sprites[s], order[s], physics.distance(rect, sprites[s].rect), bestDist);
+                }
+            }
+        }
+
+        sortCandidates(result);
+    }
+
+    private double addClosest(VGDLSprite sprite, int ord, double distance, double bestDist)
+    {
+        if(distance < bestDist)
+        {
+            candidates.clear();
+            bestDist = distance;
+        }
+        if(distance == bestDist)
+            addCandidate(sprite, ord, distance);
+        return bestDist;
+    }
+
+    /**
+     * Gets the sprites closest to a rectangle among the ones in its line of sight (see inSight()).
+     * The line of sight is stepped through cell by cell, and it ends at the first cell (other than
+     * the one of the rectangle) with any sprite of the blocking indices. Sprites out of the level
+     * are only seen if nothing blocks the sight.
+     * @param rect rectangle looking.
+     * @param dx x component of the direction it looks at (one of the four base directions).
+     * @param dy y component of the direction it looks at.
+     * @param physics physics to measure distances with.
+     * @param blockers indices with the sprites that block the sight. Can be empty.
+     * @param result filled with the closest sprites seen (all of them if several are
+     *               at the same distance), in the order the index was built from.
+     */
+    void getClosestInSight(Rectangle rect, int dx, int dy, Physics physics, SpatialIndex[] blockers, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        candidates.clear();
+        double bestDist = Double.MAX_VALUE;
+        boolean blocked = false;
+
+        int x0 = Math.floorDiv(rect.x, blockSize), y0 = Math.floorDiv(rect.y, blockSize);
+        int x = x0, y = y0;
+        if(dx > 0) x = Math.max(x, 0);
+        if(dx < 0) x = Math.min(x, width - 1);
+        if(dy > 0) y = Math.max(y, 0);
+        if(dy < 0) y = Math.min(y, height - 1);
+
+        for(; x >= 0 && x < width && y >= 0 && y < height; x += dx, y += dy)
+        {
+            int cell = x * height + y;
+            if(x != x0 || y != y0)
+                for(SpatialIndex blocker : blockers)
+                    if(blocker.cellStart[cell + 1] > blocker.cellStart[cell])
+                        blocked = true;
+            if(blocked)
+                break;
+
+            for(int s = cellStart[cell]; s < cellStart[cell + 1]; ++s)
+                if(inSight(rect, dx, dy, sprites[s].rect))
+                    bestDist = addClosest(sprites[s], order[s], physics.distance(rect, sprites[s].rect), bestDist);
+
+            //Sprites in the next cells are further away.
+            if(candidates.size() > 0)
+                break;
+        }
+
+        if(!blocked)
+            for(int i = 0; i < outside.size(); ++i)
+                if(inSight(rect, dx, dy, outside.get(i).rect))
+                    bestDist = addClosest(outside.get(i), outsideOrder.get(i), physics.distance(rect, outside.get(i).rect), bestDist);
+
+        sortCandidates(result);
+    }
+
+    /**
+     * Checks if a rectangle is in the line of sight of another one: in the same column, when
+     * looking up or down, or in the same row, when looking left or right, and not behind it.
+     * @param from rectangle looking.
+     * @param dx x component of the direction it looks at (one of the four base directions).
+     * @param dy y component of the direction it looks at.
+     * @param to rectangle to check.
+     * @return true if 'to' is in the line of sight of 'from'.
+     */
+    static boolean inSight(Rectangle from, int dx, int dy, Rectangle to)
+    {
+        if(dx == 0)
+            return to.x == from.x && (dy > 0 ? to.y >= from.y : to.y <= from.y);
+        return to.y == from.y && (dx > 0 ? to.x >= from.x : to.x <= from.x);
+    }
+
+    /**
+     * Gets the k sprites closest to a position, measured with the Euclidean distance
+     * from their positions.
+     * @param position position to measure distances from.
+     * @param k number of sprites to return.
+     * @param result filled with (up to) k sprites, sorted by ascending distance.
+     */
+    void getNearest(Vector2d position, int k, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        if(numSprites == 0 || k <= 0)
+            return;
+
+        candidates.clear();
+        for(int i = 0; i < outside.size(); ++i)
+            addCandidate(outside.get(i), outsideOrder.get(i), sqDist(position, outside.get(i).rect));
+
+        int cx = clamp((int) position.x, width), cy = clamp((int) position.y, height);
+        int maxRing = Math.max(Math.max(cx, width - 1 - cx), Math.max(cy, height - 1 - cy));
+        for(int ring = 0; ring <= maxRing; ++ring)
+        {
+            //Sprites in the next rings are further than (ring-1) * blockSize.
+            double bound = Math.max(0, ring - 1) * (double) blockSize;
+            if(candidates.size() >= k && kthDistance(k) < bound * bound)
+                break;
+            addRing(position, cx, cy, ring, Double.MAX_VALUE);
+        }
+
+        sortCandidates(result);
+        while(result.size() > k)
+            result.remove(result.size() - 1);
+    }
+
+    /**
+     * Gets all sprites within a distance of a position, measured with the Euclidean
+     * distance from their positions.
+     * @param position position to measure distances from.
+     * @param radius maximum distance.
+     * @param result filled with the sprites in the radius, sorted by ascending distance.
+     */
+    void getInRadius(Vector2d position, double radius, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        if(numSprites == 0 || radius < 0)
+            return;
+
+        double sqRadius = radius * radius;
+        candidates.clear();
+        for(int i = 0; i < outside.size(); ++i)
+        {
+            double d = sqDist(position, outside.get(i).rect);
+            if(d <= sqRadius)
+                addCandidate(outside.get(i), outsideOrder.get(i), d);
+        }
+
+        int cx = clamp((int) position.x, width), cy = clamp((int) position.y, height);
+        int maxRing = Math.max(Math.max(cx, width - 1 - cx), Math.max(cy, height - 1 - cy));
+        for(int ring = 0; ring <= maxRing; ++ring)
+        {
+            if(Math.max(0, ring - 1) * (double) blockSize > radius)
+                break;
+            addRing(position, cx, cy, ring, sqRadius);
+        }
+
+        sortCandidates(result);
+    }
+
+    /**
+     * Adds all sprites of a ring of cells around (cx, cy) as candidates, if their
+     * squared distance to the position is not over the maximum given.
+     */
+    private void addRing(Vector2d position, int cx, int cy, int ring, double maxSqDist)
+    {
+        for(int x = cx - ring; x <= cx + ring; ++x)
+        {
+            if(x < 0 || x >= width) continue;
+            int step = (x == cx - ring || x == cx + ring) ? 1 : 2 * ring;
+            for(int y = cy - ring; y <= cy + ring; y += Math.max(step, 1))
+            {
+                if(y < 0 || y >= height) continue;
+                int cell = x * height + y;
+                for(int s = cellStart[cell]; s < cellStart[cell + 1]; ++s)
+                {
+                    double d = sqDist(position, sprites[s].rect);
+                    if(d <= maxSqDist)
+                        addCandidate(sprites[s], order[s], d);
+                }
+            }
+        }
+    }
+
+    private void addCandidate(VGDLSprite sprite, int ord, double distance)
+    {
+        int n = candidates.size();
+        if(n == candidateDist.length)
+        {
+            candidateDist = Arrays.copyOf(candidateDist, n * 2);
+            candidateOrder = Arrays.copyOf(candidateOrder, n * 2);
+        }
+        candidates.add(sprite);
+        candidateDist[n] = distance;
+        candidateOrder[n] = ord;
+    }
+
+    /**
+     * Gets the k-th smallest distance among the candidates.
+     */
+    private double kthDistance(int k)
+    {
+        double[] dist = Arrays.copyOf(candidateDist, candidates.size());
+        Arrays.sort(dist);
+        return dist[k - 1];
+    }
+
+    /**
+     * Sorts the candidates by distance, and by build order for equal distances, into 'result'.
+     */
+    private void sortCandidates(ArrayList<VGDLSprite> result)
+    {
+        int n = candidates.size();
+        Integer[] idx = new Integer[n];
+        for(int i = 0; i < n; ++i)
+            idx[i] = i;
+        Arrays.sort(idx, (a, b) -> {
+            int c = Double.compare(candidateDist[a], candidateDist[b]);
+            return c != 0 ? c : Integer.compare(candidateOrder[a], candidateOrder[b]);
+        });
+        for(int i = 0; i < n; ++i)
+            result.add(candidates.get(idx[i]));
+        candidates.clear();
+    }
+
+    private static double sqDist(Vector2d position, Rectangle rect)
+    {
+        double dx = rect.x - position.x, dy = rect.y - position.y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Cell coordinate of a pixel coordinate, clamped to the level.
+     */
+    private int clamp(int pixel, int cells)
+    {
+        int c = Math.floorDiv(pixel, blockSize);
+        return Math.max(0, Math.min(cells - 1, c));
+    }
+
+    /**
+     * Gets the cell a position is in.
+     * @return the cell (x * height + y), -1 if it's out of the level.
+     */
+    private int cellOf(int px, int py)
+    {
+        int x = Math.floorDiv(px, blockSize), y = Math.floorDiv(py, blockSize);
+        if(x < 0 || x >= width || y < 0 || y >= height)
+            return -1;
+        return x * height + y;
+    }
+}
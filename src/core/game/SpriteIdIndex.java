@@ -0,0 +1,123 @@
+package core.game;
+
+import core.vgdl.VGDLSprite;
+
+/**
+ * Sprites of a game by their ID (VGDLSprite.spriteID, Observation.obsID). It's an open
+ * addressing table with linear probing, so lookups, additions and removals take constant
+ * time, and it only grows with the number of sprites alive, not with the IDs given.
+ */
+public class SpriteIdIndex
+{
+    /**
+     * IDs and sprites of each slot of the table. Slots with a null sprite are empty.
+     */
+    private int[] ids;
+    private VGDLSprite[] sprites;
+
+    /**
+     * Number of sprites in the table.
+     */
+    private int size;
+
+    public SpriteIdIndex(int expectedSprites)
+    {
+        int capacity = 16;
+        while(capacity < 2 * expectedSprites)
+            capacity <<= 1;
+        ids = new int[capacity];
+        sprites = new VGDLSprite[capacity];
+    }
+
+    /**
+     * Gets the sprite with an ID.
+     * @param spriteId ID of the sprite.
+     * @return the sprite, or null if there is none with that ID.
+     */
+    public VGDLSprite get(int spriteId)
+    {
+        int mask = ids.length - 1;
+        for(int slot = hash(spriteId) & mask; sprites[slot] != null; slot = (slot + 1) & mask)
+            if(ids[slot] == spriteId)
+                return sprites[slot];
+        return null;
+    }
+
+    /**
+     * Adds a sprite, replacing any other with the same ID.
+     * @param sprite sprite to add.
+     */
+    public void put(VGDLSprite sprite)
+    {
+        if(2 * (size + 1) > ids.length)
+            grow();
+
+        int mask = ids.length - 1;
+        int slot = hash(sprite.spriteID) & mask;
+        while(sprites[slot] != null && ids[slot] != sprite.spriteID)
+            slot = (slot + 1) & mask;
+        if(sprites[slot] == null)
+            size++;
+        ids[slot] = sprite.spriteID;
+        sprites[slot] = sprite;
+    }
+
+    /**
+     * Removes a sprite. Nothing is removed if the ID belongs to another sprite.
+     * @param sprite sprite to remove.
+     */
+    public void remove(VGDLSprite sprite)
+    {
+        int mask = ids.length - 1;
+        int slot = hash(sprite.spriteID) & mask;
+        while(sprites[slot] != null && ids[slot] != sprite.spriteID)
+            slot = (slot + 1) & mask;
+        if(sprites[slot] != sprite)
+            return;
+
+        //Moves back the entries that follow, so none is left behind the empty slot.
+        sprites[slot] = null;
+        size--;
+        for(int next = (slot + 1) & mask; sprites[next] != null; next = (next + 1) & mask)
+        {
+            int home = hash(ids[next]) & mask;
+            if(((next - home) & mask) >= ((next - slot) & mask))
+            {
+                ids[slot] = ids[next];
+                sprites[slot] = sprites[next];
+                sprites[next] = null;
+                slot = next;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of sprites in the table.
+     * @return the number of sprites.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private void grow()
+    {
+        int[] oldIds = ids;
+        VGDLSprite[] oldSprites = sprites;
+        ids = new int[2 * oldIds.length];
+        sprites = new VGDLSprite[2 * oldIds.length];
+        size = 0;
+        for(VGDLSprite sprite : oldSprites)
+            if(sprite != null)
+                put(sprite);
+    }
+
+    /**
+     * IDs are consecutive, so they are scrambled to spread them in the table.
+     */
+    private static int hash(int spriteId)
+    {
+        int h = spriteId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
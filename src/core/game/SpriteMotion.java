@@ -0,0 +1,100 @@
+package core.game;
+
+import core.vgdl.VGDLSprite;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Sprites of each type and their rectangles, as they were the last time they were checked.
+ * Each type has a version that changes every time one of its sprites is found to have moved,
+ * appeared or disappeared, so checks that only depend on where sprites are can be skipped
+ * while the versions of all the types involved stay the same (see Game.eventHandling).
+ * <p/>
+ * Sprites are compared with the last check instead of with lastrect, as effects can move them
+ * any time (i.e. UndoAll, StepBack), and a sprite that didn't move this tick may have been
+ * moved after it was last checked.
+ */
+public class SpriteMotion
+{
+    /**
+     * Sprites of each type, and their rectangles (x, y, width, height), at the last check.
+     */
+    private VGDLSprite[][] sprites;
+    private int[][] rects;
+    private int[] counts;
+
+    /**
+     * Version of the sprites of each type.
+     */
+    private int[] versions;
+
+    /**
+     * Identifier of the last check of each type, to check each type only once per identifier.
+     */
+    private int[] checked;
+
+    public SpriteMotion(int numTypes)
+    {
+        sprites = new VGDLSprite[numTypes][0];
+        rects = new int[numTypes][0];
+        counts = new int[numTypes];
+        versions = new int[numTypes];
+        checked = new int[numTypes];
+        Arrays.fill(checked, -1);
+    }
+
+    /**
+     * Gets the version of the sprites of a type, checking them first if they haven't been
+     * checked with the identifier given.
+     * @param itype type of the sprites.
+     * @param check identifier of the check. Sprites must not move while it stays the same.
+     * @param spriteIt iterator over the sprites of the type. It can be null if there are none.
+     * @return the version of the sprites.
+     */
+    int version(int itype, int check, Iterator<VGDLSprite> spriteIt)
+    {
+        if(checked[itype] == check)
+            return versions[itype];
+        checked[itype] = check;
+
+        VGDLSprite[] last = sprites[itype];
+        int[] lastRects = rects[itype];
+        int count = counts[itype];
+        boolean same = true;
+        int n = 0;
+        if(spriteIt != null) while(spriteIt.hasNext())
+        {
+            VGDLSprite sprite = spriteIt.next();
+            Rectangle r = sprite.rect;
+            if(n == last.length)
+            {
+                last = sprites[itype] = Arrays.copyOf(last, Math.max(16, 2 * n));
+                lastRects = rects[itype] = Arrays.copyOf(lastRects, 4 * last.length);
+            }
+
+            int k = 4 * n;
+            if(same)
+                same = n < count && last[n] == sprite && lastRects[k] == r.x && lastRects[k + 1] == r.y
+                        && lastRects[k + 2] == r.width && lastRects[k + 3] == r.height;
+            last[n] = sprite;
+            lastRects[k] = r.x;
+            lastRects[k + 1] = r.y;
+            lastRects[k + 2] = r.width;
+            lastRects[k + 3] = r.height;
+            n++;
+        }
+
+        if(n != count)
+        {
+            same = false;
+            if(n < count)
+                Arrays.fill(last, n, count, null);
+        }
+        counts[itype] = n;
+        if(!same)
+            versions[itype]++;
+        return versions[itype];
+    }
+}
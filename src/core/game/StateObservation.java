@@ -32,6 +32,12 @@ public class StateObservation {
      */
     protected ForwardModel model;
 
+    /**
+     * True if 'model' is the forward model of the game itself, lent to this observation
+     * to be read. It is copied the first time this observation has to modify it.
+     */
+    boolean sharedModel;
+
     /**
      * Constructor for StateObservation. Requires a forward model
      *
@@ -42,13 +48,36 @@ public class StateObservation {
         this.playerID = playerID;
     }
 
+    /**
+     * Constructor for StateObservation that may share the forward model it receives.
+     *
+     * @param a_model forward model of the game.
+     * @param sharedModel true if a_model belongs to the game, and must be copied before modifying it.
+     */
+    StateObservation(ForwardModel a_model, int playerID, boolean sharedModel) {
+        this(a_model, playerID);
+        this.sharedModel = sharedModel;
+    }
+
+    /**
+     * Gives this observation its own copy of the forward model, if it was sharing the one
+     * of the game. Must be called before any operation that modifies the model.
+     */
+    protected void ownModel() {
+        if(sharedModel) {
+            model = model.copy();
+            sharedModel = false;
+        }
+    }
+
     /**
      * Field to represent the current game's state.
      */
     public Types.GAMESTATES currentGameState;
 
     /**
-     * Returns an exact copy of the state observation object.
+     * Returns an exact copy of the state observation object. The copy has always
+     * its own forward model, even if this observation shares the one of the game.
      *
      * @return a copy of the state observation.
      */
@@ -57,6 +86,45 @@ public class StateObservation {
         return copyObs;
     }
 
+    /**
+     * Overwrites another state observation of the same game with a copy of this one, reusing
+     * the memory of its forward model instead of creating a new one (see copy()).
+     *
+     * @param target state observation to overwrite.
+     */
+    public void copyInto(StateObservation target) {
+        if(target.sharedModel) {
+            //The model of the game can't be overwritten.
+            target.model = model.copy();
+            target.sharedModel = false;
+        } else {
+            model.copyInto(target.model);
+        }
+        target.playerID = this.playerID;
+    }
+
+    /**
+     * Returns an exact copy of the state observation object, like copy(), reusing the
+     * forward model of a state released before by this same thread if there is any.
+     * Agents that copy states many times per game tick should release the copies they
+     * are done with (see release()).
+     *
+     * @return a copy of the state observation.
+     */
+    public StateObservation copyFromPool() {
+        return new StateObservation(model.copyFromPool(), this.playerID);
+    }
+
+    /**
+     * Gives the forward model of this state back to the pool of the current thread, to be
+     * reused by a later copyFromPool(). This state must not be used after this call.
+     */
+    public void release() {
+        if(!sharedModel)
+            model.release();
+        model = null;
+    }
+
     /**
      * Advances the state using the action passed as the move of the agent.
      * It updates all entities in the game. It modifies the object 'this' to
@@ -68,9 +136,26 @@ public class StateObservation {
      * @param action agent action to execute in the next cycle.
      */
     public void advance(Types.ACTIONS action) {
+        ownModel();
         model.advance(action);
     }
 
+    /**
+     * Advances the state several game cycles, using the same action as the move of the
+     * agent in all of them (macro-action). It stops earlier if the game is over. The
+     * observations of this state (grid, positions) are only refreshed once, after the
+     * last cycle, so this is cheaper than calling advance(action) 'repeat' times.
+     * <p/>
+     * Note: stochastic events will not be necessarily the same as in the real game.
+     *
+     * @param action agent action to execute in the next cycles.
+     * @param repeat number of game cycles to advance.
+     */
+    public void advance(Types.ACTIONS action, int repeat) {
+        ownModel();
+        model.advance(action, repeat);
+    }
+
     /**
      * Sets a new seed for the forward model's random generator (creates a new object)
      *
@@ -78,6 +163,20 @@ public class StateObservation {
      */
     public void setNewSeed(int seed)
     {
+        ownModel();
+        model.setNewSeed(seed);
+    }
+
+    /**
+     * Sets a new seed for the forward model's random generator. Copies of this state
+     * created afterwards get generators split from this seed, so rollouts from a seeded
+     * state are repeatable, even when the copies are advanced in parallel.
+     *
+     * @param seed the new seed.
+     */
+    public void setNewSeed(long seed)
+    {
+        ownModel();
         model.setNewSeed(seed);
     }
 
@@ -466,6 +565,124 @@ public class StateObservation {
         return model.getFromAvatarSpPositions(reference);
     }
 
+    /**
+     * Returns the observations of the k NPCs of each type closest to a reference position.
+     * Each entry in the array corresponds to a sprite type, and has the same first k observations
+     * as getNPCPositions(reference), but only the sprites around the reference are looked at.
+     *
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations of each type.
+     * @return Observations of the closest NPCs in the game.
+     */
+    public ArrayList<Observation>[] getNPCPositions(Vector2d reference, int k) {
+        return model.getNPCPositions(reference, k);
+    }
+
+    /**
+     * Returns the observations of the k immovable sprites of each type closest to a reference position.
+     * Each entry in the array corresponds to a sprite type, and has the same first k observations
+     * as getImmovablePositions(reference), but only the sprites around the reference are looked at.
+     *
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations of each type.
+     * @return Observations of the closest immovable sprites in the game.
+     */
+    public ArrayList<Observation>[] getImmovablePositions(Vector2d reference, int k) {
+        return model.getImmovablePositions(reference, k);
+    }
+
+    /**
+     * Returns the observations of the k sprites that move (but are not NPCs) of each type closest to a reference position.
+     * Each entry in the array corresponds to a sprite type, and has the same first k observations
+     * as getMovablePositions(reference), but only the sprites around the reference are looked at.
+     *
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations of each type.
+     * @return Observations of the closest movable sprites in the game.
+     */
+    public ArrayList<Observation>[] getMovablePositions(Vector2d reference, int k) {
+        return model.getMovablePositions(reference, k);
+    }
+
+    /**
+     * Returns the observations of the k resources of each type closest to a reference position.
+     * Each entry in the array corresponds to a sprite type, and has the same first k observations
+     * as getResourcesPositions(reference), but only the sprites around the reference are looked at.
+     *
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations of each type.
+     * @return Observations of the closest resources in the game.
+     */
+    public ArrayList<Observation>[] getResourcesPositions(Vector2d reference, int k) {
+        return model.getResourcesPositions(reference, k);
+    }
+
+    /**
+     * Returns the observations of the k portals of each type closest to a reference position.
+     * Each entry in the array corresponds to a sprite type, and has the same first k observations
+     * as getPortalsPositions(reference), but only the sprites around the reference are looked at.
+     *
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations of each type.
+     * @return Observations of the closest portals in the game.
+     */
+    public ArrayList<Observation>[] getPortalsPositions(Vector2d reference, int k) {
+        return model.getPortalsPositions(reference, k);
+    }
+
+    /**
+     * Returns the observations of the k sprites created by the avatar of each type closest to a reference position.
+     * Each entry in the array corresponds to a sprite type, and has the same first k observations
+     * as getFromAvatarSpritesPositions(reference), but only the sprites around the reference are looked at.
+     *
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations of each type.
+     * @return Observations of the closest sprites the avatar created.
+     */
+    public ArrayList<Observation>[] getFromAvatarSpritesPositions(Vector2d reference, int k) {
+        return model.getFromAvatarSpPositions(reference, k);
+    }
+
+    /**
+     * Returns the observations of the k sprites of a given type closest to a reference position,
+     * ordered asc. by distance to it. They are the first k observations of that type in the
+     * arrays returned by the get*Positions(reference) methods, but only the sprites around the
+     * reference are looked at.
+     *
+     * @param itype       Type of the sprites (as in Observation.itype).
+     * @param reference   Reference position to measure distances from.
+     * @param k           Maximum number of observations to return.
+     * @return Observations of the closest sprites. Empty if there are none, or they are not visible.
+     */
+    public ArrayList<Observation> getNearestObservations(int itype, Vector2d reference, int k) {
+        return model.getNearestObservations(itype, reference, k);
+    }
+
+    /**
+     * Returns the observations of the sprites of a given type within a distance of a reference
+     * position, ordered asc. by distance to it.
+     *
+     * @param itype       Type of the sprites (as in Observation.itype).
+     * @param reference   Reference position to measure distances from.
+     * @param radius      Maximum distance to the reference, in pixels.
+     * @return Observations of the sprites in the radius. Empty if there are none, or they are not visible.
+     */
+    public ArrayList<Observation> getObservationsInRadius(int itype, Vector2d reference, double radius) {
+        return model.getObservationsInRadius(itype, reference, radius);
+    }
+
+    /**
+     * Returns the observation of a sprite given its ID, to follow a particular sprite from
+     * one state to the next. It takes constant time.
+     *
+     * @param obsID ID of the sprite (as in Observation.obsID, or the sprite IDs of Event).
+     * @return Observation of the sprite, with its current position. Null if the sprite is
+     * not in the game anymore, or it's not visible.
+     */
+    public Observation getObservation(int obsID) {
+        return model.getObservation(obsID);
+    }
+
 
     /**
      * Returns key handler available to the player.
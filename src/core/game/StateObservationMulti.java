@@ -19,6 +19,16 @@ public class StateObservationMulti extends StateObservation {
         super(a_model, playerID);
     }
 
+    /**
+     * Constructor for StateObservationMulti that may share the forward model it receives.
+     *
+     * @param a_model forward model of the game.
+     * @param sharedModel true if a_model belongs to the game, and must be copied before modifying it.
+     */
+    StateObservationMulti(ForwardModel a_model, int playerID, boolean sharedModel) {
+        super(a_model, playerID, sharedModel);
+    }
+
     /**
      * Method overloaded for multi player games. Now passes an array of actions for all
      * players in the game, the index in the array corresponding to playerID.
@@ -32,9 +42,26 @@ public class StateObservationMulti extends StateObservation {
      * @param actions array of agent actions to execute in the next cycle for all players.
      */
     public void advance(Types.ACTIONS[] actions) {
+        ownModel();
         model.advance(actions);
     }
 
+    /**
+     * Method overloaded for multi player games. Advances the state several game cycles,
+     * using the same array of actions (index in array corresponding to playerID) in all
+     * of them. It stops earlier if the game is over. The observations of this state are
+     * only refreshed once, after the last cycle.
+     * <p/>
+     * Note: stochastic events will not be necessarily the same as in the real game.
+     *
+     * @param actions array of agent actions to execute in the next cycles for all players.
+     * @param repeat number of game cycles to advance.
+     */
+    public void advance(Types.ACTIONS[] actions, int repeat) {
+        ownModel();
+        model.advance(actions, repeat);
+    }
+
     /**
      * Method overloaded for multi player games. Now passes the playerID.
      * Returns the actions that are available in this game for
@@ -188,6 +215,17 @@ public class StateObservationMulti extends StateObservation {
         return copyObs;
     }
 
+    /**
+     * Method overloaded for multi player games. Keeps the player ID of this state.
+     * Returns a copy like copy(), reusing the forward model of a state released before by
+     * this same thread if there is any. Every pooled copy should be given back with release()
+     * once the agent is done with it, or the pool never gets models to reuse.
+     * @return a copy of the state observation.
+     */
+    public StateObservationMulti copyFromPool() {
+        return new StateObservationMulti(model.copyFromPool(), this.playerID);
+    }
+
     /**
      * Method overwritten with multi player optimisations.
      * @param o Object to compare this to.
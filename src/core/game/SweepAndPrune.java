@@ -0,0 +1,176 @@
+package core.game;
+
+import core.vgdl.VGDLSprite;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Sprites sorted by the left edge of their rectangles, used to find the sprites a sprite
+ * collides with in games where sprites are not aligned with the grid or have different sizes
+ * (i.e. ContinuousPhysics games). Only the sprites whose horizontal extent overlaps the one
+ * colliding are checked, and the check is still the exact rectangle intersection.
+ * <p/>
+ * Games keep one per sprite type collisions are checked against (see Game.eventHandling).
+ * The order is kept between builds, as sprites barely move from one to the next, so while
+ * sprites are the same it's brought up to date with an insertion sort.
+ */
+public class SweepAndPrune
+{
+    /**
+     * Sprites in the list, in the order they were received, and how many there are.
+     */
+    private VGDLSprite[] sprites;
+    private int numSprites;
+
+    /**
+     * Sprites (indices in 'sprites') sorted by the left edge of their rectangles, and those edges.
+     */
+    private int[] sorted;
+    private int[] left;
+
+    /**
+     * Largest width of the sprites in the list.
+     */
+    private int maxWidth;
+
+    /**
+     * Sprites found by a query.
+     */
+    private int[] found;
+
+    /**
+     * Version of the sprites this list is sorted for (see Game.eventHandling). -1 if it's not.
+     */
+    private int version;
+
+    public SweepAndPrune()
+    {
+        sprites = new VGDLSprite[0];
+        sorted = new int[0];
+        left = new int[0];
+        found = new int[0];
+        version = -1;
+    }
+
+    /**
+     * Indicates if the list is sorted for the version of the sprites given.
+     * @param version current version of the sprites.
+     * @return true if it is.
+     */
+    boolean isBuilt(int version)
+    {
+        return this.version == version;
+    }
+
+    /**
+     * Sorts the sprites received.
+     * @param version current version of the sprites.
+     * @param spriteList sprites to sort.
+     */
+    void build(int version, ArrayList<VGDLSprite> spriteList)
+    {
+        this.version = version;
+        int n = spriteList.size();
+        boolean same = (n == numSprites);
+        for(int i = 0; same && i < n; ++i)
+            same = (sprites[i] == spriteList.get(i));
+
+        if(sprites.length < n)
+        {
+            sprites = new VGDLSprite[n];
+            sorted = new int[n];
+            left = new int[n];
+            found = new int[n];
+        }
+        numSprites = n;
+        maxWidth = 0;
+        for(int i = 0; i < n; ++i)
+        {
+            sprites[i] = spriteList.get(i);
+            maxWidth = Math.max(maxWidth, sprites[i].rect.width);
+        }
+
+        if(same)
+        {
+            //Same sprites as the last time, likely still in order or close to it.
+            for(int s = 0; s < n; ++s)
+            {
+                int i = sorted[s];
+                int x = sprites[i].rect.x;
+                int t = s;
+                while(t > 0 && precedes(i, x, sorted[t - 1], left[t - 1]))
+                {
+                    sorted[t] = sorted[t - 1];
+                    left[t] = left[t - 1];
+                    t--;
+                }
+                sorted[t] = i;
+                left[t] = x;
+            }
+        }else
+        {
+            long[] keys = new long[n];
+            for(int i = 0; i < n; ++i)
+                keys[i] = ((long) sprites[i].rect.x << 32) | i;
+            Arrays.sort(keys);
+            for(int s = 0; s < n; ++s)
+            {
+                sorted[s] = (int) keys[s];
+                left[s] = (int) (keys[s] >> 32);
+            }
+        }
+    }
+
+    /**
+     * Order of the list: by left edge, and by position in the list for equal edges.
+     */
+    private boolean precedes(int i, int x, int j, int y)
+    {
+        return x < y || (x == y && i < j);
+    }
+
+    /**
+     * Gets the sprites of the list a sprite intersects with, as they are now.
+     * @param sprite sprite to check. It's never part of the result, even if it's in the list.
+     * @param result filled with the sprites it intersects, in the order the list was received.
+     */
+    void getColliding(VGDLSprite sprite, ArrayList<VGDLSprite> result)
+    {
+        result.clear();
+        if(CollisionGrid.hasOwnIntersects(sprite))
+        {
+            for(int i = 0; i < numSprites; ++i)
+                addIfColliding(sprite, sprites[i], result);
+            return;
+        }
+
+        //Sprites that intersect start after rect.x - maxWidth and before rect.x + rect.width.
+        Rectangle r = sprite.rect;
+        long from = (long) r.x - maxWidth, to = (long) r.x + r.width;
+        int lo = 0, hi = numSprites;
+        while(lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(left[mid] <= from) lo = mid + 1;
+            else hi = mid;
+        }
+
+        int numFound = 0;
+        for(int s = lo; s < numSprites && left[s] < to; ++s)
+            found[numFound++] = sorted[s];
+
+        //Back to the order the sprites were received in.
+        if(numFound > 1)
+            Arrays.sort(found, 0, numFound);
+        for(int f = 0; f < numFound; ++f)
+            addIfColliding(sprite, sprites[found[f]], result);
+    }
+
+    private void addIfColliding(VGDLSprite sprite, VGDLSprite other, ArrayList<VGDLSprite> result)
+    {
+        if(sprite != other && sprite.intersects(other))
+            result.add(other);
+    }
+}
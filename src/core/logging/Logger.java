@@ -94,7 +94,7 @@ public class Logger {
      * @param m
      *            the message to be added to messages
      */
-    public void addMessage(Message m) {
+    public synchronized void addMessage(Message m) {
         if(active){
             messages.add(m);
         }
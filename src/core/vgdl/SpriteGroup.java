@@ -121,9 +121,9 @@ public class SpriteGroup
     }
 
     /**
-     * Retrieves a sprite given its unique ID. It'll return null if the
-     * sprite is not in the collection.
-     * @param spriteId ID of the sprite to retrieve.
+     * Retrieves a sprite given its position in the sprite list (not its unique ID,
+     * see Game.getSpriteById() for that).
+     * @param spriteId position of the sprite to retrieve.
      * @return the desired sprite.
      */
     public VGDLSprite getSprite(int spriteId)
@@ -13,8 +13,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
@@ -210,13 +209,21 @@ public abstract class VGDLSprite {
     /**
      * List of types this sprite belongs to. It contains the ids, including itself's, from this sprite up
      * in the hierarchy of sprites defined in SpriteSet in the game definition.
+     * Shared by all the copies of a sprite, so it must not be modified once set.
      */
     public ArrayList<Integer> itypes;
 
     /**
      * Indicates the amount of resources this sprite has, for each type defined as its int identifier.
+     * Indexed by identifier + 1, so undefined resources (-1) have a place too, and NO_RESOURCE for
+     * the types this sprite never had. Null until the sprite gets its first resource.
      */
-    public TreeMap<Integer, Integer> resources;
+    private int[] resources;
+
+    /**
+     * Value in 'resources' of the types of resources the sprite never had.
+     */
+    private static final int NO_RESOURCE = Integer.MIN_VALUE;
 
     /**
      * All images in case there's orientation changes and/or animations.
@@ -372,7 +379,7 @@ public abstract class VGDLSprite {
         isFirstTick = true;
         disabled = false;
         limitHealthPoints = 1000;
-        resources = new TreeMap<Integer, Integer>();
+        resources = null;
         itypes = new ArrayList<Integer>();
         rotation = 0.0;
         max_speed = -1.0;
@@ -486,7 +493,8 @@ public abstract class VGDLSprite {
      */
     public void preMovement()
     {
-        lastrect = new Rectangle(rect);
+        //Each sprite owns its lastrect (it's never shared), so it's updated in place.
+        lastrect.setBounds(rect);
         lastmove += 1;
 
         frameRemaining -= 1;
@@ -642,14 +650,14 @@ public abstract class VGDLSprite {
     {
         int prev = getAmountResource(resourceId);
         int next = Math.max(0,prev + amount_delta);
-        resources.put(resourceId, next);
+        setAmountResource(resourceId, next);
     }
 
     public void subtractResource(int resourceId, int amount_delta)
     {
         int prev = getAmountResource(resourceId);
         int next = Math.max(0,prev - amount_delta);
-        resources.put(resourceId, next);
+        setAmountResource(resourceId, next);
     }
 
     /**
@@ -657,7 +665,7 @@ public abstract class VGDLSprite {
      * @param resourceId - id of the resource whose quantity must be changed.
      */
     public void removeResource(int resourceId) {
-        resources.put(resourceId, 0);
+        setAmountResource(resourceId, 0);
     }
 
     /**
@@ -668,12 +676,78 @@ public abstract class VGDLSprite {
     public int getAmountResource(int resourceId)
     {
         int prev = 0;
-        if(resources.containsKey(resourceId))
-            prev = resources.get(resourceId);
+        if(hasResource(resourceId))
+            prev = resources[resourceId + 1];
 
         return prev;
     }
 
+    /**
+     * Sets the amount of resource of a given type this sprite has.
+     * @param resourceId id of the resource to set.
+     * @param amount how much of this resource this sprite has from now on.
+     */
+    public void setAmountResource(int resourceId, int amount)
+    {
+        if(resources == null || resourceId + 1 >= resources.length)
+        {
+            int oldLength = (resources == null) ? 0 : resources.length;
+            int[] grown = new int[Math.max(resourceId + 2, 2 * oldLength)];
+            Arrays.fill(grown, NO_RESOURCE);
+            if(resources != null)
+                System.arraycopy(resources, 0, grown, 0, oldLength);
+            resources = grown;
+        }
+        resources[resourceId + 1] = amount;
+    }
+
+    /**
+     * Indicates if this sprite has (or has had) any amount of a given type of resource.
+     * @param resourceId id of the resource to check.
+     * @return true if the sprite has had this resource at some point, even if it has none now.
+     */
+    public boolean hasResource(int resourceId)
+    {
+        return resources != null && resourceId + 1 < resources.length && resources[resourceId + 1] != NO_RESOURCE;
+    }
+
+    /**
+     * Returns the number of types of resources this sprite has (or has had).
+     * @return the number of types of resources.
+     */
+    public int numResources()
+    {
+        int num = 0;
+        if(resources != null)
+            for(int amount : resources)
+                if(amount != NO_RESOURCE) num++;
+        return num;
+    }
+
+    /**
+     * Adds the resources this sprite has to a map, by resource id.
+     * @param result map to add the amount of each type of resource to.
+     */
+    public void getResources(Map<Integer, Integer> result)
+    {
+        if(resources != null)
+            for(int i = 0; i < resources.length; ++i)
+                if(resources[i] != NO_RESOURCE)
+                    result.put(i - 1, resources[i]);
+    }
+
+    /**
+     * Adds the resources of another sprite to the ones this sprite has.
+     * @param other sprite whose resources are added.
+     */
+    public void addResources(VGDLSprite other)
+    {
+        if(other.resources != null)
+            for(int i = 0; i < other.resources.length; ++i)
+                if(other.resources[i] != NO_RESOURCE)
+                    modifyResource(i - 1, other.resources[i]);
+    }
+
     /**
      * Draws this sprite (both the not oriented and, if appropriate, the oriented part)
      * @param gphx graphics object to draw in.
@@ -717,7 +791,7 @@ public abstract class VGDLSprite {
 	            else
 	                _draw(gphx, game, r);
 	
-	            if(resources.size() > 0)
+	            if(numResources() > 0)
 	            {
 	                _drawResources(gphx, game, r);
 	            }
@@ -730,7 +804,7 @@ public abstract class VGDLSprite {
 
             else{
                 _drawOriented(gphx, r);
-	            if(resources.size() > 0)
+	            if(numResources() > 0)
 	            {
 	                _drawResources(gphx, game, r);
 	            }
@@ -879,15 +953,16 @@ public abstract class VGDLSprite {
      */
     protected void _drawResources(Graphics2D gphx, Game game, Rectangle r)
     {
-        int numResources = resources.size();
+        int numResources = numResources();
         double barheight = r.getHeight() / 3.5f / numResources;
         double offset = r.getMinY() + 2*r.height / 3.0f;
 
-        Set<Map.Entry<Integer, Integer>> entries = resources.entrySet();
-        for(Map.Entry<Integer, Integer> entry : entries)
+        for(int i = 0; i < resources.length; ++i)
         {
-            int resType = entry.getKey();
-            int resValue = entry.getValue();
+            if(resources[i] == NO_RESOURCE)
+                continue;
+            int resType = i - 1;
+            int resValue = resources[i];
 
             if(resType > -1) {
                 double wiggle = r.width / 10.0f;
@@ -1128,6 +1203,8 @@ public abstract class VGDLSprite {
     public void copyTo(VGDLSprite toSprite)
     {
         //this.color, this.draw_arrow don't need to be copied.
+        //Objects that never change once the sprite is created (images, physics, itypes,
+        //directions) are shared with the copy instead of duplicated.
         toSprite.name = this.name;
         toSprite.is_static = this.is_static;
         toSprite.only_active = this.only_active;
@@ -1144,7 +1221,7 @@ public abstract class VGDLSprite {
         toSprite.physics = this.physics; //Object reference, but should be ok.
         toSprite.shrinkfactor = this.shrinkfactor;
         toSprite.is_oriented = this.is_oriented;
-        toSprite.orientation = new Direction(orientation.x(), orientation.y());
+        toSprite.orientation = this.orientation; //Directions are immutable.
         toSprite.rect = new Rectangle(this.rect.x, this.rect.y, this.rect.width, this.rect.height);
         toSprite.lastrect =  new Rectangle(this.lastrect.x, this.lastrect.y, this.lastrect.width, this.lastrect.height);
         toSprite.lastmove = this.lastmove;
@@ -1183,15 +1260,13 @@ public abstract class VGDLSprite {
         toSprite.img = this.img;
         toSprite.orientedImg = this.orientedImg;
 
-        toSprite.itypes = new ArrayList<Integer>();
-        for(Integer it : this.itypes)
-            toSprite.itypes.add(it);
+        toSprite.itypes = this.itypes;
 
-        toSprite.resources = new TreeMap<Integer, Integer>();
-        Set<Map.Entry<Integer, Integer>> entries = this.resources.entrySet();
-        for(Map.Entry<Integer, Integer> entry : entries)
+        toSprite.resources = null;
+        if(this.resources != null)
         {
-            toSprite.resources.put(entry.getKey(), entry.getValue());
+            toSprite.resources = new int[this.resources.length];
+            System.arraycopy(this.resources, 0, toSprite.resources, 0, this.resources.length);
         }
 
     }
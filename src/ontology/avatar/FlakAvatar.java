@@ -102,20 +102,20 @@ public class FlakAvatar extends HorizontalAvatar
             return true; //no ammo defined, I can shoot.
 
         //If I have ammo, I must have enough resource of ammo type to be able to shoot.
-        if(resources.containsKey(ammoId))
+        if(hasResource(ammoId))
             if(minAmmo > -1)
-                return resources.get(ammoId) > minAmmo;
+                return getAmountResource(ammoId) > minAmmo;
             else
-                return resources.get(ammoId) > 0;
+                return getAmountResource(ammoId) > 0;
 
         return false;
     }
 
     private void reduceAmmo()
     {
-        if(ammo != null && resources.containsKey(ammoId))
+        if(ammo != null && hasResource(ammoId))
         {
-            resources.put(ammoId, resources.get(ammoId) - ammoCost);
+            setAmountResource(ammoId, getAmountResource(ammoId) - ammoCost);
         }
     }
     public VGDLSprite copy()
@@ -130,9 +130,9 @@ public class MovingAvatar extends VGDLSprite {
 
         Types.ACTIONS action;
         if (game.no_players > 1) {
-            action = this.player.act(game.getObservationMulti(playerID), ect.copy());
+            action = this.player.act(game.getObservationMultiView(playerID), ect.copy());
         } else {
-            action = this.player.act(game.getObservation(), ect.copy());
+            action = this.player.act(game.getObservationView(), ect.copy());
         }
         
         if(action == null){
@@ -106,15 +106,15 @@ public class ShootAvatar extends OrientedAvatar
             return true; //no ammo defined, I can shoot.
 
         //If I have ammo, I must have enough resource of ammo type to be able to shoot.
-        return resources.containsKey(ammoId[idx]) && resources.get(ammoId[idx]) > 0;
+        return hasResource(ammoId[idx]) && getAmountResource(ammoId[idx]) > 0;
 
     }
 
     protected void reduceAmmo(int idx)
     {
-        if(ammo != null && idx < ammos.length && resources.containsKey(ammoId[idx]))
+        if(ammo != null && idx < ammos.length && hasResource(ammoId[idx]))
         {
-            resources.put(ammoId[idx], resources.get(ammoId[idx]) - 1);
+            setAmountResource(ammoId[idx], getAmountResource(ammoId[idx]) - 1);
         }
     }
 
@@ -36,18 +36,19 @@ public abstract class Effect{
     //Change of the score this effect makes.
     public String scoreChange = "0";
 
-    //Count something
+    //Count something. Effects that decide it while executing tell the game (see Game.setCount()).
     public boolean count = true;
     public String counter = "0";
     
-    //Count something else
+    //Count something else. Effects that decide it while executing tell the game (see Game.setCountElse()).
     public boolean countElse = true;
     public String counterElse = "0";
 
     //Probabilty for stochastic effects.
     public double prob = 1;
 
-    //Indicates if this effects changes the score.
+    //Indicates if this effects changes the score. Effects that decide it while executing
+    // tell the game instead (see Game.setApplyScore()), as effects are shared by all forward models.
     public boolean applyScore = true;
 
     //Indicates the number of repetitions of this effect. This affects how many times this
@@ -103,10 +104,26 @@ public abstract class Effect{
      * @return number of sprites in the list to collide with. List comes back sorted by proximity.
      */
     public int sortBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
+        Rectangle boundary = new Rectangle();
+        int nColls = sortBatch(sprite1, sprite2list, boundary);
+        collision = boundary;
+        return nColls;
+    }
+
+    /**
+     * Takes a batch of sprites to collide against at once, and builds the collision boundary with them,
+     * without keeping it in this effect (effects are shared by all copies of a game, that may run
+     * in different threads).
+     * @param sprite1 Sprite that collides with the batch
+     * @param sprite2list Sprites to collide against.
+     * @param boundary set to the collision boundary.
+     * @return number of sprites in the list to collide with. List comes back sorted by proximity.
+     */
+    protected int sortBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Rectangle boundary) {
 
         if(sprite2list.size() == 1) {
             //execute(sprite1, sprite2list.get(0), game);
-            collision = sprite2list.get(0).rect;
+            boundary.setBounds(sprite2list.get(0).rect);
             return 1;
 
         }else if(sprite2list.size() > 2)
@@ -114,7 +131,7 @@ public abstract class Effect{
             //More than 2, sort by proximity and return the first.
             sortByProximity(sprite1, sprite2list);
             //execute(sprite1, sprite2list.get(0), game);
-            collision = sprite2list.get(0).rect;
+            boundary.setBounds(sprite2list.get(0).rect);
             return 1;
         }
 
@@ -130,7 +147,7 @@ public abstract class Effect{
             double y = b1Above ? b1.rect.getY() : b2.rect.getY();
             double w = b1.rect.getWidth();
             double h = b1.rect.getHeight() * 2;
-            collision = new Rectangle((int)x,(int)y,(int)w,(int)h);
+            boundary.setBounds((int)x,(int)y,(int)w,(int)h);
 
         }else if (b1.rect.getCenterY() == b2.rect.getCenterY())
         {
@@ -140,12 +157,12 @@ public abstract class Effect{
             double y = b1.rect.getY();
             double w = b1.rect.getWidth() * 2;
             double h = b1.rect.getHeight();
-            collision = new Rectangle((int)x,(int)y,(int)w,(int)h);
+            boundary.setBounds((int)x,(int)y,(int)w,(int)h);
         }else {
             //Not aligned, better to use the closest one.
             sortByProximity(sprite1, sprite2list);
             //execute(sprite1, sprite2list.get(0), game);
-            collision = sprite2list.get(0).rect;
+            boundary.setBounds(sprite2list.get(0).rect);
             return 1;
         }
 
@@ -160,11 +177,11 @@ public abstract class Effect{
             @Override
             public int compare(VGDLSprite o1, VGDLSprite o2) {
 
-                Vector2d s1Center = new Vector2d(o1.lastrect.getCenterX(), o1.lastrect.getCenterY());
-                Vector2d s2Center = new Vector2d(o2.lastrect.getCenterX(), o2.lastrect.getCenterY());
+                double dist1 = spCompareCenter.dist(o1.lastrect.getCenterX(), o1.lastrect.getCenterY());
+                double dist2 = spCompareCenter.dist(o2.lastrect.getCenterX(), o2.lastrect.getCenterY());
 
-                if(spCompareCenter.dist(s1Center) < spCompareCenter.dist(s2Center))  		return -1;
-                else if(spCompareCenter.dist(s1Center) > spCompareCenter.dist(s2Center))	return 1;
+                if(dist1 < dist2)  		return -1;
+                else if(dist1 > dist2)	return 1;
                 return 0;
             }
         });
@@ -229,6 +246,17 @@ public abstract class Effect{
      * @return - score change
      */
     public int getScoreChange(int playerID) {
+        return getScoreChange(scoreChange, playerID);
+    }
+
+    /**
+     * Determine score change for specific player, from a score change other than this effect's
+     * (see Game.setScoreChange())
+     * @param scoreChange - score change, in the same format as the scoreChange attribute
+     * @param playerID - player affected
+     * @return - score change
+     */
+    public int getScoreChange(String scoreChange, int playerID) {
         String[] scores = scoreChange.split(",");
         try{
             return playerID < scores.length ? Integer.parseInt(scores[playerID]) : Integer.parseInt(scores[0]);
@@ -39,11 +39,11 @@ public class ChangeResource extends Effect
 	}
 	
         int numResources = sprite1.getAmountResource(resourceId);
-        applyScore = false;
+        game.setApplyScore(this, false);
         if(numResources + value <= game.getResourceLimit(resourceId))
         {
             sprite1.modifyResource(resourceId, value);
-            applyScore = true;
+            game.setApplyScore(this, true);
 
             if(killResource)
                 //boolean variable set to true, as the sprite was transformed
@@ -37,13 +37,13 @@ public class CollectResource extends Effect
         if(sprite1.is_resource)
         {
             Resource r = (Resource) sprite1;
-            applyScore=false;
+            game.setApplyScore(this, false);
             int numResources = sprite2.getAmountResource(r.resource_type);
 
             if(numResources < game.getResourceLimit(r.resource_type))
             {
                 int topup = Math.min(r.value, game.getResourceLimit(r.resource_type) - numResources);
-                applyScore=true;
+                game.setApplyScore(this, true);
                 sprite2.modifyResource(r.resource_type, topup);
 
                 if(killResource)
@@ -35,9 +35,9 @@ public class KillIfFromAbove extends Effect
         boolean otherHigher = sprite1.lastrect.getMinY() > (sprite2.lastrect.getMinY()+(sprite2.rect.height/2));
         boolean goingDown = sprite2.rect.getMinY() > sprite2.lastrect.getMinY();
 
-        applyScore=false;
+        game.setApplyScore(this, false);
         if (otherHigher && goingDown){
-            applyScore=true;
+            game.setApplyScore(this, true);
             //boolean variable set to false to indicate the sprite was not transformed
             game.killSprite(sprite1, false);
         }
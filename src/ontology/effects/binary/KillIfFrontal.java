@@ -45,10 +45,10 @@ public class KillIfFrontal extends Effect
         Direction sumDir = new Direction(firstV.x + otherV.x, firstV.y + otherV.y);
         Direction firstDir = new Direction(firstV.x, firstV.y);
 
-        applyScore=false;
+        game.setApplyScore(this, false);
         if( firstDir.equals(Types.DNONE) || (sumDir.equals(Types.DNONE)))
         {
-            applyScore=true;
+            game.setApplyScore(this, true);
             //boolean variable set to false to indicate the sprite was not transformed
             game.killSprite(sprite1, false);
         }
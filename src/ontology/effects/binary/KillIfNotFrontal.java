@@ -45,11 +45,11 @@ public class KillIfNotFrontal extends Effect
         Direction sumDir = new Direction(firstV.x + otherV.x, firstV.y + otherV.y);
         Direction firstDir = new Direction(firstV.x, firstV.y);
 
-        applyScore=false;
+        game.setApplyScore(this, false);
         if( firstDir.equals(Types.DNONE) || !(sumDir.equals(Types.DNONE)))
         {
             //boolean variable set to false to indicate the sprite was not transformed
-            applyScore=true;
+            game.setApplyScore(this, true);
             game.killSprite(sprite1, false);
         }
 
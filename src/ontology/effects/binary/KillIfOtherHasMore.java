@@ -39,11 +39,11 @@ public class KillIfOtherHasMore extends Effect
 	    return;
 	}
 	
-        applyScore = false;
+        game.setApplyScore(this, false);
         //If 'sprite2' has more than a limit of the resource type given, sprite dies.
         if(sprite2.getAmountResource(resourceId) >= limit)
         {
-            applyScore = true;
+            game.setApplyScore(this, true);
             //boolean variable set to false to indicate the sprite was not transformed
             game.killSprite(sprite1, false);
             if (subtract)
@@ -1,7 +1,6 @@
 package ontology.effects.binary;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
 
 import core.vgdl.VGDLSprite;
 import core.content.InteractionContent;
@@ -24,17 +23,11 @@ import tools.Vector2d;
  */
 public class PullWithIt extends Effect
 {
-    private int lastGameTime;
-
-    private ArrayList<VGDLSprite> spritesThisCycle;
-
     public boolean pixelPerfect;
 
     public PullWithIt(InteractionContent cnt)
     {
         pixelPerfect = false;
-        lastGameTime = -1;
-        spritesThisCycle = new ArrayList<VGDLSprite>();
         this.parseParameters(cnt);
     }
 
@@ -45,20 +38,10 @@ public class PullWithIt extends Effect
             Logger.getInstance().addMessage(new Message(Message.WARNING, "Neither the 1st nor 2nd sprite can be EOS with PullWithIt interaction."));
             return;
         }
-        //Keep in the list, for the current cycle, the sprites that have triggered this event.
-        int currentGameTime = game.getGameTick();
-        if(currentGameTime > lastGameTime)
-        {
-            spritesThisCycle.clear();
-            lastGameTime = currentGameTime;
-        }
-
-        //the event gets triggered only once per time-step on each sprite.
-        if(spritesThisCycle.contains(sprite1))
+        //the event gets triggered only once per time-step on each sprite (the game keeps track of them).
+        if(!game.applyOncePerTick(this, sprite1))
             return;
 
-        spritesThisCycle.add(sprite1);
-
         //And go on.
         Rectangle r = sprite1.lastrect;
         Vector2d v = sprite2.lastDirection();
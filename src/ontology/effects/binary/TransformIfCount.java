@@ -50,19 +50,19 @@ public class TransformIfCount extends TransformTo {
 	}
 	
         int numSpritesCheck = game.getNumSprites(itypeCount);
-        this.applyScore = false;
-        this.count = false;
-        this.countElse = false;
+        game.setApplyScore(this, false);
+        game.setCount(this, false);
+        game.setCountElse(this, false);
         if(numSpritesCheck <= leq && numSpritesCheck >= geq)
         {
             VGDLSprite newSprite = game.addSprite(itype, sprite1.getPosition(), true);
             super.transformTo(newSprite, sprite1, sprite2, game);
-            this.applyScore = true;
-            this.count = true;
+            game.setApplyScore(this, true);
+            game.setCount(this, true);
         } else if (estype != null) {
             VGDLSprite newSprite = game.addSprite(eitype, sprite1.getPosition(), true);
             super.transformTo(newSprite, sprite1, sprite2, game);
-            this.countElse=true;
+            game.setCountElse(this, true);
         }
     }
     
@@ -3,8 +3,6 @@ package ontology.effects.binary;
 import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
 
 import core.vgdl.VGDLRegistry;
 import core.vgdl.VGDLSprite;
@@ -100,16 +98,7 @@ public class TransformToSingleton extends Effect {
                 oldSprite.lastrect.width, oldSprite.lastrect.height);
 
         //Copy resources
-        if(oldSprite.resources.size() > 0)
-        {
-            Set<Map.Entry<Integer, Integer>> entries = oldSprite.resources.entrySet();
-            for(Map.Entry<Integer, Integer> entry : entries)
-            {
-                int resType = entry.getKey();
-                int resValue = entry.getValue();
-                newSprite.modifyResource(resType, resValue);
-            }
-        }
+        newSprite.addResources(oldSprite);
 
 
         //Avatar handling (I think considering avatars here is weird...)
@@ -51,14 +51,9 @@ public class WallBounce extends Effect
     public int executeBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
 
 
-        int nColls = super.sortBatch(sprite1, sprite2list, game);
-
-        if(nColls == 1)
-        {
-            doBounce(sprite1, sprite2list.get(0).rect, game);
-        }else{
-            doBounce(sprite1, collision, game);
-        }
+        Rectangle boundary = new Rectangle();
+        int nColls = super.sortBatch(sprite1, sprite2list, boundary);
+        doBounce(sprite1, boundary, game);
 
         sprite1.setRect(sprite1.lastrect);
         for(VGDLSprite sprite2 : sprite2list)
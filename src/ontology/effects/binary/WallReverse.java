@@ -24,14 +24,10 @@ import java.util.Comparator;
 public class WallReverse extends Effect
 {
     private double friction;
-    private int lastGameTime;
-    private ArrayList<VGDLSprite> spritesThisCycle;
 
     public WallReverse(InteractionContent cnt)
     {
         super.inBatch = true;
-        lastGameTime = -1;
-        spritesThisCycle = new ArrayList<VGDLSprite>();
         this.parseParameters(cnt);
     }
 
@@ -51,14 +47,9 @@ public class WallReverse extends Effect
 
     public int executeBatch(VGDLSprite sprite1, ArrayList<VGDLSprite> sprite2list, Game game) {
 
-        int nColls = super.sortBatch(sprite1, sprite2list, game);
-
-        if(nColls == 1)
-        {
-            doReverse(sprite1, sprite2list.get(0).rect, game);
-        }else{
-            doReverse(sprite1, collision, game);
-        }
+        Rectangle boundary = new Rectangle();
+        int nColls = super.sortBatch(sprite1, sprite2list, boundary);
+        doReverse(sprite1, boundary, game);
 
         sprite1.setRect(sprite1.lastrect);
         for (VGDLSprite sprite2 : sprite2list)
@@ -33,14 +33,14 @@ public class AddHealthPoints extends Effect
 	    return;
 	}
 	
-        applyScore = false;
+        game.setApplyScore(this, false);
         if(sprite1.healthPoints + value < sprite1.limitHealthPoints) {
             sprite1.healthPoints += value;
 
             if (sprite1.healthPoints > sprite1.maxHealthPoints)
                 sprite1.maxHealthPoints = sprite1.healthPoints;
 
-            applyScore = true;
+            game.setApplyScore(this, true);
 
             if(killSecond && sprite2 != null)
                 //boolean variable set to false to indicate the sprite was not transformed
@@ -33,7 +33,7 @@ public class AddHealthPointsToMax extends Effect
 	    return;
 	}
 	
-        applyScore = true;
+        game.setApplyScore(this, true);
         if(sprite1.healthPoints + value < sprite1.limitHealthPoints) {
             sprite1.healthPoints += value;
         } else {
@@ -39,12 +39,12 @@ public class KillIfHasLess extends Effect
 	    Logger.getInstance().addMessage(new Message(Message.WARNING, "1st sprite can't be EOS with KillIfHasLess interaction."));
 	    return;
 	}
-        applyScore = false;
+        game.setApplyScore(this, false);
         if(sprite1.getAmountResource(resourceId) <= limit)
         {
             //boolean variable set to false to indicate the sprite was not transformed
             game.killSprite(sprite1, false);
-            applyScore = true;
+            game.setApplyScore(this, true);
         }
     }
 }
@@ -40,11 +40,11 @@ public class KillIfHasMore extends Effect
 	    return;
 	}
 	
-        applyScore = false;
+        game.setApplyScore(this, false);
         if(sprite1.getAmountResource(resourceId) >= limit)
         {
             //boolean variable set to false to indicate the sprite was not transformed
-            applyScore = true;
+            game.setApplyScore(this, true);
             game.killSprite(sprite1, false);
         }
     }
@@ -49,8 +49,8 @@ public class SpawnIfCounterSubTypes extends Effect {
 	    return;
 	}
 	
-        applyScore = false;
-        count=false;
+        game.setApplyScore(this, false);
+        game.setCount(this, false);
 
         int countAcum = 0;
 
@@ -75,8 +75,8 @@ public class SpawnIfCounterSubTypes extends Effect {
             countAcumSubTypes /= 2;
             if(countAcumSubTypes == subTypesNum) {
                 game.addSprite(itype, sprite1.getPosition());
-                applyScore = true;
-                count=true;
+                game.setApplyScore(this, true);
+                game.setCount(this, true);
             } else {
                 game.addSprite(eitype, sprite1.getPosition());
             }
@@ -43,14 +43,14 @@ public class SpawnIfHasLess extends Effect {
 	    return;
 	}
 	
-        applyScore = false;
+        game.setApplyScore(this, false);
 
         if(game.getRandomGenerator().nextDouble() >= prob) return;
 
         if(sprite1.getAmountResource(resourceId) <= limit)
         {
             game.addSprite(itype, sprite1.getPosition());
-            applyScore = true;
+            game.setApplyScore(this, true);
         }
     }
     
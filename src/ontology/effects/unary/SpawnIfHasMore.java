@@ -45,14 +45,14 @@ public class SpawnIfHasMore  extends Effect {
 	    return;
 	}
 	
-        applyScore = false;
+        game.setApplyScore(this, false);
 
         if(game.getRandomGenerator().nextDouble() >= prob) return;
 
         if(sprite1.getAmountResource(resourceId) >= limit)
         {
             game.addSprite(itype, sprite1.getPosition());
-            applyScore = true;
+            game.setApplyScore(this, true);
 
             sprite1.modifyResource(resourceId, -spend); //0 by default.
         }
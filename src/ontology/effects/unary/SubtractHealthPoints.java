@@ -26,7 +26,6 @@ public class SubtractHealthPoints extends Effect
     public int itype = -1;
     public int limit; //kills sprite1 when less or equal to this value (default=0).
     public String scoreChangeIfKilled;
-    private String defScoreChange;
 
     public SubtractHealthPoints(InteractionContent cnt) throws Exception
     {
@@ -41,7 +40,6 @@ public class SubtractHealthPoints extends Effect
         	throw new Exception("Undefined sprite " + stype);
             }
         }
-        defScoreChange = scoreChange;
     }
 
     @Override
@@ -73,9 +71,7 @@ public class SubtractHealthPoints extends Effect
         {
             //boolean variable set to false to indicate the sprite was not transformed
             game.killSprite(s, false);
-            scoreChange = scoreChangeIfKilled;
-        } else {
-            scoreChange = defScoreChange;
+            game.setScoreChange(this, scoreChangeIfKilled);
         }
     }
 }
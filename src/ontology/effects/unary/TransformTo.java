@@ -2,8 +2,6 @@ package ontology.effects.unary;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Set;
 
 import core.vgdl.VGDLRegistry;
 import core.vgdl.VGDLSprite;
@@ -71,16 +69,7 @@ public class TransformTo extends Effect {
                     sprite1.lastrect.width, sprite1.lastrect.height);
 
             //Copy resources
-            if(sprite1.resources.size() > 0)
-            {
-                Set<Map.Entry<Integer, Integer>> entries = sprite1.resources.entrySet();
-                for(Map.Entry<Integer, Integer> entry : entries)
-                {
-                    int resType = entry.getKey();
-                    int resValue = entry.getValue();
-                    newSprite.modifyResource(resType, resValue);
-                }
-            }
+            newSprite.addResources(sprite1);
 
 
             //Avatar handling.
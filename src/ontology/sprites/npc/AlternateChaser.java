@@ -4,7 +4,6 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Random;
 
 import core.vgdl.VGDLRegistry;
 import core.vgdl.VGDLSprite;
@@ -106,11 +105,11 @@ public class AlternateChaser extends RandomNPC
     protected void movesToward(VGDLSprite target)
     {
         double distance = this.physics.distance(rect, target.rect);
+        Rectangle r = new Rectangle(this.rect);
         for(Direction act : Types.DBASEDIRS)
         {
             //Calculate the distance if I'd apply this move.
-            Rectangle r = new Rectangle(this.rect);
-            r.translate((int)act.x(), (int)act.y());
+            r.setLocation(rect.x + (int)act.x(), rect.y + (int)act.y());
             double newDist = this.physics.distance(r, target.rect);
 
             //depending on getting me closer/farther, if I'm fleeing/chasing, add move:
@@ -129,7 +128,6 @@ public class AlternateChaser extends RandomNPC
     protected void closestTargets(Game game, boolean randomTarget)
     {
         targets.clear();
-        double bestDist = Double.MAX_VALUE;
 
         int targetSpriteId = -1;
         int numChasing = 0;
@@ -141,35 +139,24 @@ public class AlternateChaser extends RandomNPC
 
         if(numChasing > numFleeing)
         {
-            targetSpriteId = itype1[new Random().nextInt(itype1.length)];
+            targetSpriteId = itype1[game.getRandomGenerator().nextInt(itype1.length)];
             fleeing = false;
         }else if(numFleeing > numChasing)
         {
-            targetSpriteId = itype2[new Random().nextInt(itype2.length)];
+            targetSpriteId = itype2[game.getRandomGenerator().nextInt(itype2.length)];
             fleeing = true;
         }
 
         if(targetSpriteId != -1)
         {
-            Iterator<VGDLSprite> spriteIt = game.getSubSpritesGroup(targetSpriteId);
-            if(spriteIt != null) while(spriteIt.hasNext())
+            if(randomTarget)
             {
-                VGDLSprite s = spriteIt.next();
-
-                if(randomTarget)
-                {
-                    targets.add(s);
-                }else{
-                    double distance = this.physics.distance(rect, s.rect);
-                    if(distance < bestDist)
-                    {
-                        bestDist = distance;
-                        targets.clear();
-                        targets.add(s);
-                    }else if(distance == bestDist){
-                        targets.add(s);
-                    }
-                }
+                Iterator<VGDLSprite> spriteIt = game.getSubSpritesGroup(targetSpriteId);
+                if(spriteIt != null) while(spriteIt.hasNext())
+                    targets.add(spriteIt.next());
+            }else
+            {
+                game.getClosestSprites(this, targetSpriteId, true, targets);
             }
         }
 
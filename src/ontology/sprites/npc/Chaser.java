@@ -3,7 +3,6 @@ package ontology.sprites.npc;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import core.vgdl.VGDLRegistry;
 import core.vgdl.VGDLSprite;
@@ -101,11 +100,11 @@ public class Chaser extends RandomNPC
             return;
         }
 
+        Rectangle r = new Rectangle(this.rect);
         for(Direction act : Types.DBASEDIRS)
         {
             //Calculate the distance if I'd apply this move.
-            Rectangle r = new Rectangle(this.rect);
-            r.translate((int)act.x(), (int)act.y());
+            r.setLocation(rect.x + (int)act.x(), rect.y + (int)act.y());
             double newDist = this.physics.distance(r, target.rect);
 
             //depending on getting me closer/farther, if I'm fleeing/chasing, add move:
@@ -122,25 +121,9 @@ public class Chaser extends RandomNPC
      */
     protected void closestTargets(Game game)
     {
-        targets.clear();
-        double bestDist = Double.MAX_VALUE;
-
-        Iterator<VGDLSprite> spriteIt = game.getSpriteGroup(itype);
-        if(spriteIt == null) spriteIt = game.getSubSpritesGroup(itype); //Try subtypes
-
-        if(spriteIt != null) while(spriteIt.hasNext())
-        {
-            VGDLSprite s = spriteIt.next();
-            double distance = this.physics.distance(rect, s.rect);
-            if(distance < bestDist)
-            {
-                bestDist = distance;
-                targets.clear();
-                targets.add(s);
-            }else if(distance == bestDist){
-                targets.add(s);
-            }
-        }
+        //Sprites of the type or, if there are none, of its subtypes.
+        boolean subtypes = (game.getSpriteGroup(itype) == null);
+        game.getClosestSprites(this, itype, subtypes, targets);
     }
 
 
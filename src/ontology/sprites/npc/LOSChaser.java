@@ -1,20 +1,25 @@
 package ontology.sprites.npc;
 
+import core.vgdl.VGDLRegistry;
 import core.vgdl.VGDLSprite;
 import core.content.SpriteContent;
 import core.game.Game;
-import ontology.Types;
 import tools.Direction;
 import tools.Vector2d;
 
 import java.awt.*;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 // Line of sigh chaser. Chases the target if it is in its line of sight, otherwise acts like random NPC.
 
 public class LOSChaser extends Chaser
 {
+    /**
+     * Sprite types (comma separated) that block the line of sight. If not set, nothing does.
+     */
+    public String obs;
+    public int[] obsItypes;
+
     public LOSChaser(){}
 
     public LOSChaser(Vector2d position, Dimension size, SpriteContent cnt)
@@ -37,6 +42,8 @@ public class LOSChaser extends Chaser
     public void postProcess()
     {
         super.postProcess();
+        if(obs != null)
+            obsItypes = VGDLRegistry.GetInstance().explode(obs);
     }
 
     /**
@@ -45,50 +52,9 @@ public class LOSChaser extends Chaser
      */
     protected void closestTargets(Game game)
     {
-        targets.clear();
-        double bestDist = Double.MAX_VALUE;
-
-        Iterator<VGDLSprite> spriteIt = game.getSpriteGroup(itype);
-        if(spriteIt == null) spriteIt = game.getSubSpritesGroup(itype); //Try subtypes
-
-        if(spriteIt != null) while(spriteIt.hasNext())
-        {
-            VGDLSprite s = spriteIt.next();
-            double distance = this.physics.distance(rect, s.rect);
-
-            //check if I can see this sprite
-            boolean canSee = false;
-
-            if (prevAction == Types.DNONE || prevAction == Types.DNIL) {
-                break;
-            } else if (prevAction.equals(Types.DDOWN)) {
-                if ((s.rect.x == rect.x && s.rect.y >= rect.y)) {
-                    canSee = true;
-                }
-            } else if (prevAction.equals(Types.DUP)) {
-                if ((s.rect.x == rect.x && s.rect.y <= rect.y)) {
-                    canSee = true;
-                }
-            } else if (prevAction.equals(Types.DLEFT)) {
-                if ((s.rect.x <= rect.x && s.rect.y == rect.y)) {
-                    canSee = true;
-                }
-            } else if (prevAction.equals(Types.DRIGHT)) {
-                if ((s.rect.x >= rect.x && s.rect.y == rect.y)) {
-                    canSee = true;
-                }
-            }
-
-            if (canSee) {
-                if (distance < bestDist) {
-                    bestDist = distance;
-                    targets.clear();
-                    targets.add(s);
-                } else if (distance == bestDist) {
-                    targets.add(s);
-                }
-            }
-        }
+        //Sprites of the type or, if there are none, of its subtypes, in the direction of the last move.
+        boolean subtypes = (game.getSpriteGroup(itype) == null);
+        game.getSpritesInSight(this, prevAction, itype, subtypes, obsItypes, targets);
     }
 
 
@@ -106,6 +72,8 @@ public class LOSChaser extends Chaser
         targetSprite.stype = this.stype;
         targetSprite.itype = this.itype;
         targetSprite.maxDistance = this.maxDistance;
+        targetSprite.obs = this.obs;
+        targetSprite.obsItypes = this.obsItypes;
         targetSprite.targets = new ArrayList<VGDLSprite>();
         targetSprite.actions = new ArrayList<Direction>();
         super.copyTo(targetSprite);
@@ -115,6 +83,9 @@ public class LOSChaser extends Chaser
     public ArrayList<String> getDependentSprites(){
     	ArrayList<String> result = new ArrayList<String>();
     	if(stype != null) result.add(stype);
+    	if(obs != null)
+    	    for(String s : obs.split(","))
+    	        result.add(s);
     	
     	return result;
     }
@@ -11,7 +11,6 @@ import tools.pathfinder.Node;
 
 import java.awt.*;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 /**
  * Created with IntelliJ IDEA.
@@ -101,25 +100,9 @@ public class PathChaser extends RandomNPC
      */
     protected void closestTargets(Game game)
     {
-        targets.clear();
-        double bestDist = Double.MAX_VALUE;
-
-        Iterator<VGDLSprite> spriteIt = game.getSpriteGroup(itype);
-        if(spriteIt == null) spriteIt = game.getSubSpritesGroup(itype); //Try subtypes
-
-        if(spriteIt != null) while(spriteIt.hasNext())
-        {
-            VGDLSprite s = spriteIt.next();
-            double distance = this.physics.distance(rect, s.rect);
-            if(distance < bestDist)
-            {
-                bestDist = distance;
-                targets.clear();
-                targets.add(s);
-            }else if(distance == bestDist){
-                targets.add(s);
-            }
-        }
+        //Sprites of the type or, if there are none, of its subtypes.
+        boolean subtypes = (game.getSpriteGroup(itype) == null);
+        game.getClosestSprites(this, itype, subtypes, targets);
     }
 
 
@@ -50,7 +50,7 @@ public class Walker extends VGDLSprite
     	super.updatePassive();
 
         double d;
-    	if (this.airsteering || this.lastDirection().x == 0){
+    	if (this.airsteering || this.rect.x == this.lastrect.x){
     		if (this.orientation.x() > 0){
     			d = 1;
     		}
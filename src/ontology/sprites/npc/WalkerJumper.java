@@ -47,7 +47,7 @@ public class WalkerJumper extends Walker
     {
     	super.updatePassive();
     	
-    	if (on_ground && this.probability > Math.random())
+    	if (on_ground && this.probability > game.getRandomGenerator().nextDouble())
         {
             Direction dd = new Direction(0,-this.jump_strength);
             this.orientation = new Direction (this.orientation.x(),0.0);
@@ -111,9 +111,7 @@ public class SpawnPointMultiSprite extends SpriteProducer
     {
         SpawnPointMultiSprite targetSprite = (SpawnPointMultiSprite) target;
 
-        targetSprite.itypes = new ArrayList<>();
-        for(Integer it : this.itypes)
-            targetSprite.itypes.add(it);
+        targetSprite.itypes = this.itypes; //Not modified after parsing, so it's shared.
 
         targetSprite.prob = this.prob;
         targetSprite.total = this.total;
@@ -0,0 +1,82 @@
+package testing;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import core.game.BatchAdvance;
+import core.game.Game;
+import core.game.StateObservation;
+import core.vgdl.VGDLFactory;
+import core.vgdl.VGDLParser;
+import core.vgdl.VGDLRegistry;
+import ontology.Types;
+
+/**
+ * Checks that batches of rollouts are repeatable: the same seeded batch must give the same
+ * results whether it runs on one thread or on many. The games played have effects that decide
+ * while executing whether they change the score or the counters (ChangeResource,
+ * TransformIfCount, CollectResource...), which rollouts running at once must not mix up.
+ */
+public class BatchAdvanceTesting {
+
+    public static void main(String[] args) {
+
+	String gamesPath = "examples/gridphysics/";
+	String games[] = new String[] { "chipschallenge", "link", "mirrors", "painter", "seaquest", "solarfox",
+		"waves", "zelda" };
+
+	int rollouts = 64; // Rollouts in each batch.
+	int length = 100; // Actions in each rollout.
+	int repetitions = 5; // Times each batch is run on many threads.
+	ForkJoinPool single = new ForkJoinPool(1);
+	ForkJoinPool parallel = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+	Random rnd = new Random(1);
+	int totalMismatches = 0;
+
+	for (String g : games) {
+	    String game = gamesPath + g + ".txt";
+	    String level = gamesPath + g + "_lvl0.txt";
+
+	    VGDLFactory.GetInstance().init();
+	    VGDLRegistry.GetInstance().init();
+	    Game toPlay = new VGDLParser().parseGame(game);
+	    toPlay.buildLevel(level, rnd.nextInt());
+	    StateObservation root = toPlay.getObservation();
+
+	    StateObservation[] states = new StateObservation[rollouts];
+	    Types.ACTIONS[][] actions = new Types.ACTIONS[rollouts][length];
+	    ArrayList<Types.ACTIONS> available = root.getAvailableActions(true);
+	    for (int i = 0; i < rollouts; i++) {
+		states[i] = root;
+		for (int j = 0; j < length; j++)
+		    actions[i][j] = available.get(rnd.nextInt(available.size()));
+	    }
+	    long seed = rnd.nextLong();
+
+	    BatchAdvance.setPool(single);
+	    root.setNewSeed(seed);
+	    BatchAdvance.Result[] expected = BatchAdvance.advance(states, actions);
+
+	    int mismatches = 0;
+	    BatchAdvance.setPool(parallel);
+	    for (int r = 0; r < repetitions; r++) {
+		root.setNewSeed(seed);
+		BatchAdvance.Result[] results = BatchAdvance.advance(states, actions);
+		for (int i = 0; i < rollouts; i++) {
+		    if (results[i].getScore() != expected[i].getScore()
+			    || results[i].getWinner() != expected[i].getWinner()
+			    || results[i].state.getGameTick() != expected[i].state.getGameTick())
+			mismatches++;
+		}
+	    }
+
+	    System.out.println(g + ": " + mismatches + " mismatches");
+	    totalMismatches += mismatches;
+	}
+
+	single.shutdown();
+	parallel.shutdown();
+	System.out.println("Total: " + totalMismatches + " mismatches");
+    }
+}
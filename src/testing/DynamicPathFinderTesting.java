@@ -0,0 +1,110 @@
+package testing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import core.game.ForwardModel;
+import core.game.Game;
+import core.game.Observation;
+import core.game.StateObservation;
+import core.vgdl.VGDLFactory;
+import core.vgdl.VGDLParser;
+import core.vgdl.VGDLRegistry;
+import ontology.Types;
+import tools.Vector2d;
+import tools.pathfinder.Node;
+import tools.pathfinder.PathFinder;
+
+/**
+ * Checks that dynamic path finders give the same paths as new path finders created on the
+ * current state. Plays random actions, takes every sprite type in the level but the avatar as an
+ * obstacle, so obstacles change each tick, and compares random paths after each update.
+ */
+public class DynamicPathFinderTesting {
+
+    public static void main(String[] args) {
+
+	String gamesPath = "examples/gridphysics/";
+	String games[] = new String[] { "aliens", "boulderdash", "chase", "frogs", "labyrinth", "pacman",
+		"sokoban", "zelda" };
+
+	int steps = 100; // Game ticks played in each level.
+	int queries = 200; // Paths compared after each tick.
+	Random rnd = new Random(1);
+	int totalMismatches = 0;
+
+	for (String g : games) {
+	    String game = gamesPath + g + ".txt";
+	    String level = gamesPath + g + "_lvl0.txt";
+
+	    VGDLFactory.GetInstance().init();
+	    VGDLRegistry.GetInstance().init();
+	    Game toPlay = new VGDLParser().parseGame(game);
+	    toPlay.buildLevel(level, rnd.nextInt());
+
+	    ForwardModel model = new ForwardModel(toPlay, 0);
+	    model.update(toPlay);
+	    StateObservation state = new StateObservation(model, 0);
+	    ArrayList<Observation>[][] grid = state.getObservationGrid();
+	    int width = grid.length, height = grid[0].length;
+
+	    PathFinder dynamic = new PathFinder(obstacleTypes(state), true, true);
+	    dynamic.run(state.copy());
+
+	    int mismatches = 0;
+	    for (int step = 0; step < steps && !state.isGameOver(); step++) {
+		// Requested paths are kept, and must be dropped if the obstacles change.
+		for (int q = 0; q < queries; q++)
+		    dynamic.getPath(randomCell(rnd, width, height), randomCell(rnd, width, height));
+
+		ArrayList<Types.ACTIONS> actions = state.getAvailableActions(true);
+		state.advance(actions.get(rnd.nextInt(actions.size())));
+		dynamic.updateObstacles(model);
+
+		PathFinder fresh = new PathFinder(dynamic.obstacleItypes, true);
+		fresh.run(state.copy());
+		for (int q = 0; q < queries; q++) {
+		    Vector2d start = randomCell(rnd, width, height), end = randomCell(rnd, width, height);
+		    if (!samePath(dynamic.getPath(start, end), fresh.getPath(start, end)))
+			mismatches++;
+		}
+	    }
+
+	    System.out.println(g + ": " + mismatches + " mismatches");
+	    totalMismatches += mismatches;
+	}
+
+	System.out.println("Total: " + totalMismatches + " mismatches");
+    }
+
+    /**
+     * Gets the types of all sprites in the level, except the avatar's.
+     */
+    private static ArrayList<Integer> obstacleTypes(StateObservation state) {
+	HashSet<Integer> types = new HashSet<Integer>();
+	for (ArrayList<Observation>[] column : state.getObservationGrid())
+	    for (ArrayList<Observation> cell : column)
+		for (Observation obs : cell)
+		    if (obs.category != Types.TYPE_AVATAR)
+			types.add(obs.itype);
+	return new ArrayList<Integer>(types);
+    }
+
+    private static Vector2d randomCell(Random rnd, int width, int height) {
+	return new Vector2d(rnd.nextInt(width), rnd.nextInt(height));
+    }
+
+    private static boolean samePath(ArrayList<Node> p1, ArrayList<Node> p2) {
+	if (p1 == null || p2 == null)
+	    return p1 == p2;
+	if (p1.size() != p2.size())
+	    return false;
+	for (int i = 0; i < p1.size(); i++) {
+	    if (!p1.get(i).position.equals(p2.get(i).position)
+		    || !p1.get(i).comingFrom.equals(p2.get(i).comingFrom))
+		return false;
+	}
+	return true;
+    }
+}
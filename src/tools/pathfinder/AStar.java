@@ -1,7 +1,12 @@
 package tools.pathfinder;
 
+import tools.Vector2d;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.PriorityQueue;
 
 /**
@@ -9,22 +14,105 @@ import java.util.PriorityQueue;
  */
 public class AStar
 {
-    public static PriorityQueue<Node> closedList, openList;
-    public HashMap<Integer, ArrayList<Node>> pathCache;
     public PathFinder pathfinder;
-    public boolean visited[][];
+
+    /**
+     * Index of each free cell of the grid in the path tables, -1 for obstacle cells.
+     * Dynamic path finders index all cells, as obstacles can change (see blocked).
+     */
+    public int cellIndex[][];
+
+    /**
+     * Grid position of each indexed cell, by index.
+     */
+    private int cellX[], cellY[];
+
+    /**
+     * Indexed cells that currently hold an obstacle. Only dynamic path finders index them.
+     * Never modified once assigned (a new array replaces it), so searches can use it unlocked.
+     */
+    private volatile boolean blocked[];
+
+    /**
+     * Length of the shortest path between two free cells (distances[start][goal]),
+     * -1 if the goal can't be reached from the start.
+     */
+    public short distances[][];
+
+    /**
+     * Last move of the shortest path between two free cells (lastMoves[start][goal]), as an
+     * index of the neighbour moves of the path finder. Paths are rebuilt backwards from it.
+     */
+    private byte lastMoves[][];
+
+    /**
+     * Binary heap used by the searches: cell indices, ordered by their distance to the start.
+     * One per thread, as forward model copies share the path finder and may run in parallel.
+     */
+    private ThreadLocal<int[]> heaps;
+
+    /**
+     * Start cells with paths in the tables, from least to most recently used. Only used by lazy
+     * path finders, which drop the paths of the oldest start when there are too many.
+     */
+    private LinkedHashMap<Integer, Boolean> recentStarts;
 
     public AStar(PathFinder pathfinder)
     {
         this.pathfinder = pathfinder;
-        pathCache = new HashMap<Integer, ArrayList<Node>>();
-        visited = new boolean[pathfinder.grid.length][pathfinder.grid[0].length];
+
+        int width = pathfinder.grid.length, height = pathfinder.grid[0].length;
+        boolean obstacles[][] = new boolean[width][height];
+        cellIndex = new int[width][height];
+        int numCells = 0;
+        for(int i = 0; i < width; ++i)
+            for(int j = 0; j < height; ++j)
+            {
+                obstacles[i][j] = pathfinder.isObstacle(i, j);
+                cellIndex[i][j] = (obstacles[i][j] && !pathfinder.dynamic) ? -1 : numCells++;
+            }
+
+        cellX = new int[numCells];
+        cellY = new int[numCells];
+        boolean[] blockedCells = new boolean[numCells];
+        for(int i = 0; i < width; ++i)
+            for(int j = 0; j < height; ++j)
+                if(cellIndex[i][j] != -1)
+                {
+                    cellX[cellIndex[i][j]] = i;
+                    cellY[cellIndex[i][j]] = j;
+                    blockedCells[cellIndex[i][j]] = obstacles[i][j];
+                }
+        blocked = blockedCells;
+
+        distances = new short[numCells][];
+        lastMoves = new byte[numCells][];
+        final int heapSize = numCells;
+        heaps = ThreadLocal.withInitial(() -> new int[heapSize]);
+
+        if(pathfinder.lazy)
+        {
+            recentStarts = new LinkedHashMap<Integer, Boolean>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest)
+                {
+                    if(size() <= PathFinder.LAZY_CACHE_SIZE)
+                        return false;
+                    distances[eldest.getKey()] = null;
+                    lastMoves[eldest.getKey()] = null;
+                    return true;
+                }
+            };
+        }
     }
 
-    public void emptyCache()
+    public synchronized void emptyCache()
     {
-        pathCache.clear();
-
+        Arrays.fill(distances, null);
+        Arrays.fill(lastMoves, null);
+        if(recentStarts != null)
+            recentStarts.clear();
     }
 
     private static double heuristicEstimatedCost(Node curNode, Node goalNode)
@@ -54,27 +142,105 @@ public class AStar
         return path;
     }
 
+    /**
+     * Rebuilds the path to a goal cell from a row of the tables, walking back from the goal.
+     * @param dist distances from the start cell.
+     * @param moves last moves of the paths from the start cell.
+     * @param goal index of the goal cell.
+     * @return the path, without the start cell. null if there is no path.
+     */
+    private ArrayList<Node> calculatePath(short[] dist, byte[] moves, int goal)
+    {
+        if(dist == null || dist[goal] <= 0)
+            return null;
+
+        int length = dist[goal];
+        Node[] nodes = new Node[length];
+        int x = cellX[goal], y = cellY[goal];
+        for(int k = length - 1; k >= 0; --k)
+        {
+            int move = moves[cellIndex[x][y]];
+            Node node = new Node(new Vector2d(x, y));
+            node.comingFrom = new Vector2d(pathfinder.x_arrNeig[move], pathfinder.y_arrNeig[move]);
+            nodes[k] = node;
+            x -= pathfinder.x_arrNeig[move];
+            y -= pathfinder.y_arrNeig[move];
+        }
+        return new ArrayList<Node>(Arrays.asList(nodes));
+    }
+
+    /**
+     * Finds the index of the free cell a node is in.
+     * @param node node to check.
+     * @return the index of the cell in the tables, -1 if it is an obstacle or out of the grid.
+     */
+    private int indexOf(Node node)
+    {
+        int x = (int) node.position.x, y = (int) node.position.y;
+        if(x < 0 || x >= cellIndex.length || y < 0 || y >= cellIndex[x].length)
+            return -1;
+        int idx = cellIndex[x][y];
+        return (idx == -1 || blocked[idx]) ? -1 : idx;
+    }
+
     public ArrayList<Node> getPath(Node start, Node goal)
     {
-        int pathId = start.id * 10000 + goal.id;
-        if(pathCache.containsKey(pathId))
-            return pathCache.get(pathId);
-        return null;
+        int startIdx = indexOf(start), goalIdx = indexOf(goal);
+        if(startIdx == -1 || goalIdx == -1)
+            return null;
+        if(recentStarts != null)
+            return getPathLazy(startIdx, goalIdx);
+        return calculatePath(distances[startIdx], lastMoves[startIdx], goalIdx);
     }
 
-    public ArrayList<Node> findPath(Node start, Node goal)
+    /**
+     * Gets a path for a lazy path finder, computing all paths from the start cell if they are
+     * not in the tables. The tables are only accessed while holding the lock of this object,
+     * but the search runs outside it, so several threads can search at the same time.
+     */
+    private ArrayList<Node> getPathLazy(int startIdx, int goalIdx)
     {
-        if(goal != null)
+        short[] dist;
+        byte[] moves;
+        boolean[] obstacles;
+        synchronized(this)
+        {
+            dist = distances[startIdx];
+            moves = lastMoves[startIdx];
+            obstacles = blocked;
+            if(dist != null)
+                recentStarts.put(startIdx, Boolean.TRUE);
+        }
+
+        if(dist == null)
         {
-            int pathId = start.id * 10000 + goal.id;
-            if(pathCache.containsKey(pathId))
-                return pathCache.get(pathId);
-            ArrayList<Node> path = _findPath(start, goal);
+            dist = new short[cellX.length];
+            moves = new byte[cellX.length];
+            search(startIdx, obstacles, dist, moves);
+
+            synchronized(this)
+            {
+                //Only store it if obstacles have not changed while searching.
+                if(obstacles == blocked && distances[startIdx] == null)
+                {
+                    distances[startIdx] = dist;
+                    lastMoves[startIdx] = moves;
+                    recentStarts.put(startIdx, Boolean.TRUE);
+                }
+            }
+        }
 
-            if(path!=null)
-                pathCache.put(pathId, path);
+        return calculatePath(dist, moves, goalIdx);
+    }
 
-            return path;
+    public ArrayList<Node> findPath(Node start, Node goal)
+    {
+        if(goal != null)
+        {
+            int startIdx = indexOf(start);
+            if(recentStarts != null || (startIdx != -1 && distances[startIdx] != null))
+                return getPath(start, goal);
+            return _findPath(start, goal);
         }
 
         _dijkstraa(start);
@@ -82,68 +248,172 @@ public class AStar
     }
 
 
-    private void _dijkstraa(Node start)
+    /**
+     * Tells if a cell of the level holds an obstacle.
+     */
+    interface Obstacles
     {
+        boolean at(int x, int y);
+    }
 
-        ArrayList<Node> destinationsFromStart = new ArrayList<Node>();
-        //All unvisited at the beginning.
-        visited = new boolean[pathfinder.grid.length][pathfinder.grid[0].length];
-        //...except the starting node
-        visited[(int)start.position.x][(int)start.position.y] = true;
+    /**
+     * Compares the obstacles received with the current ones. For each cell that
+     * changed, drops the paths of all start cells whose search could have visited it, so they
+     * are computed again (as a new search would) the next time they are requested.
+     * @param current tells which cells hold an obstacle now.
+     */
+    synchronized void updateObstacles(Obstacles current)
+    {
+        boolean[] next = null;
+        for(int idx = 0; idx < blocked.length; ++idx)
+        {
+            boolean obstacle = current.at(cellX[idx], cellY[idx]);
+            if(obstacle == blocked[idx])
+                continue;
 
-        Node node = null;
+            if(next == null)
+                next = blocked.clone();
+            next[idx] = obstacle;
 
-        openList = new PriorityQueue<Node>();
-        start.totalCost = 0.0f;
+            Iterator<Integer> starts = recentStarts.keySet().iterator();
+            while(starts.hasNext())
+            {
+                int start = starts.next();
+                if(obstacle ? distances[start][idx] != -1 : reachesNeighbour(distances[start], idx))
+                {
+                    distances[start] = null;
+                    lastMoves[start] = null;
+                    starts.remove();
+                }
+            }
+        }
 
-        openList.add(start);
+        if(next != null)
+            blocked = next;
+    }
 
-        while(openList.size() != 0)
+    /**
+     * Checks if any of the neighbours of a cell can be reached, according to a row of distances.
+     * @param dist distances from a start cell.
+     * @param idx index of the cell to check.
+     * @return true if the search that produced 'dist' reached a neighbour of the cell.
+     */
+    private boolean reachesNeighbour(short[] dist, int idx)
+    {
+        for(int i = 0; i < pathfinder.x_arrNeig.length; ++i)
         {
-            node = openList.poll();
-            //System.out.println("Remaining in list: " + openList.size());
+            int nx = cellX[idx] + pathfinder.x_arrNeig[i], ny = cellY[idx] + pathfinder.y_arrNeig[i];
+            if(nx >= 0 && nx < cellIndex.length && ny >= 0 && ny < cellIndex[nx].length
+                    && cellIndex[nx][ny] != -1 && dist[cellIndex[nx][ny]] != -1)
+                return true;
+        }
+        return false;
+    }
 
-            if(!destinationsFromStart.contains(node) && (node != start))
-            {
-                destinationsFromStart.add(node);
-            }
+    /**
+     * Fills the tables for all paths that begin in the start node.
+     * @param start node to find all paths from.
+     */
+    private void _dijkstraa(Node start)
+    {
+        int startIdx = indexOf(start);
+        if(startIdx == -1)
+            return;
 
-            ArrayList<Node> neighbours = pathfinder.getNeighbours(node);
+        short[] dist = new short[cellX.length];
+        byte[] moves = new byte[cellX.length];
+        search(startIdx, blocked, dist, moves);
 
-            for(int i = 0; i < neighbours.size(); ++i)
+        distances[startIdx] = dist;
+        lastMoves[startIdx] = moves;
+    }
+
+    /**
+     * Finds the shortest paths from a start cell to all others. Moves have unit cost, and cells
+     * are expanded in the same order a PriorityQueue of nodes would, so ties between paths of
+     * the same length are broken as they have always been.
+     * @param startIdx index of the start cell.
+     * @param obstacles cells that can't be traversed, by index.
+     * @param dist filled with the distance to each cell (-1 if not reachable).
+     * @param moves filled with the last move of the path to each cell.
+     */
+    private void search(int startIdx, boolean[] obstacles, short[] dist, byte[] moves)
+    {
+        int[] heap = heaps.get();
+        int[] xMoves = pathfinder.x_arrNeig, yMoves = pathfinder.y_arrNeig;
+        Arrays.fill(dist, (short) -1);
+        dist[startIdx] = 0;
+
+        int size = 0;
+        heap[size++] = startIdx;
+
+        while(size != 0)
+        {
+            int node = heap[0];
+            int last = heap[--size];
+            if(size > 0)
+                siftDown(heap, dist, last, size);
+
+            int x = cellX[node], y = cellY[node];
+            for(int i = 0; i < xMoves.length; ++i)
             {
-                Node neighbour = neighbours.get(i);
-                double curDistance = neighbour.totalCost;
-                if (! visited[(int)neighbour.position.x][(int)neighbour.position.y] )
-                {
-                    visited[(int)neighbour.position.x][(int)neighbour.position.y] = true;
-                    neighbour.totalCost = curDistance + node.totalCost;
-                    neighbour.parent = node;
-                    openList.add(neighbour);
+                int nx = x + xMoves[i], ny = y + yMoves[i];
+                if(nx < 0 || nx >= cellIndex.length || ny < 0 || ny >= cellIndex[nx].length)
+                    continue;
 
-                }else if(curDistance + node.totalCost < neighbour.totalCost)
+                int neighbour = cellIndex[nx][ny];
+                if(neighbour != -1 && !obstacles[neighbour] && dist[neighbour] == -1)
                 {
-                    neighbour.totalCost = curDistance + node.totalCost;
-                    neighbour.parent = node;
+                    dist[neighbour] = (short) (dist[node] + 1);
+                    moves[neighbour] = (byte) i;
+                    siftUp(heap, dist, neighbour, size++);
                 }
             }
-
         }
+    }
 
-
-        for(Node dest : destinationsFromStart)
+    /**
+     * Inserts a cell in the heap, at position k (java.util.PriorityQueue.siftUp).
+     */
+    private static void siftUp(int[] heap, short[] dist, int cell, int k)
+    {
+        while(k > 0)
         {
-            int pathid = start.id * 10000 + dest.id;
-            pathCache.put(pathid, calculatePath(dest));
+            int parent = (k - 1) >>> 1;
+            if(dist[cell] >= dist[heap[parent]])
+                break;
+            heap[k] = heap[parent];
+            k = parent;
         }
+        heap[k] = cell;
+    }
 
+    /**
+     * Places a cell at the root of the heap and moves it down (java.util.PriorityQueue.siftDown).
+     */
+    private static void siftDown(int[] heap, short[] dist, int cell, int size)
+    {
+        int k = 0;
+        int half = size >>> 1;
+        while(k < half)
+        {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if(right < size && dist[heap[child]] > dist[heap[right]])
+                child = right;
+            if(dist[cell] <= dist[heap[child]])
+                break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = cell;
     }
 
     private ArrayList<Node> _findPath(Node start, Node goal)
     {
         Node node = null;
-        openList = new PriorityQueue<Node>();
-        closedList = new PriorityQueue<Node>();
+        PriorityQueue<Node> openList = new PriorityQueue<Node>();
+        PriorityQueue<Node> closedList = new PriorityQueue<Node>();
 
         start.totalCost = 0.0f;
         start.estimatedCost = heuristicEstimatedCost(start, goal);
@@ -209,6 +479,20 @@ public class AStar
         return ends;
     }
 
+    /**
+     * Prints all paths stored in the tables.
+     */
+    public void printPaths()
+    {
+        for(int start = 0; start < cellX.length; ++start)
+            for(int goal = 0; goal < cellX.length; ++goal)
+                if(distances[start] != null && distances[start][goal] > 0)
+                {
+                    int pathId = (cellX[start] * 100 + cellY[start]) * 10000 + cellX[goal] * 100 + cellY[goal];
+                    printPath(pathId, calculatePath(distances[start], lastMoves[start], goal));
+                }
+    }
+
     public void printPath(int pathId, ArrayList<Node> nodes)
     {
         if(nodes == null)
@@ -1,5 +1,6 @@
 package tools.pathfinder;
 
+import core.game.ForwardModel;
 import core.game.Observation;
 import core.game.StateObservation;
 import ontology.Types;
@@ -17,18 +18,62 @@ public class PathFinder {
 
     public boolean VERBOSE = false;
 
+    /**
+     * Maximum number of start cells whose paths are kept when they are computed on demand.
+     */
+    public static int LAZY_CACHE_SIZE = 1024;
+
+    /**
+     * If true, paths are not computed when the path finder runs, but the first time
+     * a path is requested from each start cell (see AStar.getPath).
+     */
+    public boolean lazy;
+
+    /**
+     * If true, obstacles may appear, disappear or move during the game. The path finder
+     * is told about the current obstacles every game tick (see updateObstacles), and only
+     * drops the paths that may have changed. Dynamic path finders are always lazy.
+     */
+    public boolean dynamic;
+
     //All types are obstacles except the ones included in this array
     public ArrayList<Integer> obstacleItypes;
 
     public ArrayList<Observation> grid[][];
 
 
-    private static int[] x_arrNeig = null;
-    private static int[] y_arrNeig = null;
+    /**
+     * Moves allowed from each cell. Set when the path finder runs, and not modified after.
+     */
+    int[] x_arrNeig = null;
+    int[] y_arrNeig = null;
 
     public PathFinder(ArrayList<Integer> obstacleItypes)
+    {
+        this(obstacleItypes, false);
+    }
+
+    /**
+     * Creates a path finder.
+     * @param obstacleItypes sprite types that can't be traversed.
+     * @param lazy true to compute the paths from each cell only when they are requested.
+     */
+    public PathFinder(ArrayList<Integer> obstacleItypes, boolean lazy)
+    {
+        this(obstacleItypes, lazy, false);
+    }
+
+    /**
+     * Creates a path finder.
+     * @param obstacleItypes sprite types that can't be traversed.
+     * @param lazy true to compute the paths from each cell only when they are requested.
+     * @param dynamic true if obstacles can change during the game.
+     */
+    public PathFinder(ArrayList<Integer> obstacleItypes, boolean lazy, boolean dynamic)
     {
         this.obstacleItypes = obstacleItypes;
+        this.lazy = lazy || dynamic;
+        this.dynamic = dynamic;
     }
 
     public void run(StateObservation stateObs)
@@ -38,35 +83,49 @@ public class PathFinder {
         this.astar = new AStar(this);
 
         init();
-        runAll();
+        if(!lazy)
+            runAll();
 
         if(VERBOSE)
-        {
-            for(Integer pathId : astar.pathCache.keySet())
-            {
-                ArrayList<Node> nodes = astar.pathCache.get(pathId);
-                astar.printPath(pathId, nodes);
-            }
-        }
+            astar.printPaths();
+    }
+
+    /**
+     * Checks the obstacles in the grid received against the ones paths are currently computed
+     * with, and drops the paths affected by the cells that changed. Only for dynamic path finders.
+     * @param currentGrid observation grid of the current game state.
+     */
+    public void updateObstacles(ArrayList<Observation>[][] currentGrid)
+    {
+        if(dynamic && astar != null)
+            astar.updateObstacles((x, y) -> isObstacle(currentGrid, x, y));
+    }
+
+    /**
+     * Like updateObstacles(ArrayList[][]), but reads the obstacles from the cells of a forward
+     * model, so its grid of observations doesn't need to be built or kept up to date.
+     * @param model forward model of the current game state.
+     */
+    public void updateObstacles(ForwardModel model)
+    {
+        if(dynamic && astar != null)
+            astar.updateObstacles((x, y) -> model.observationGridContains(x, y, obstacleItypes::contains));
     }
 
     private void init()
     {
-        if(x_arrNeig == null)
+        //TODO: This is a bit of a hack, it wouldn't work with other (new) action sets.
+        ArrayList<Types.ACTIONS> actions = this.state.getAvailableActions();
+        if(actions.size() == 3)
         {
-            //TODO: This is a bit of a hack, it wouldn't work with other (new) action sets.
-            ArrayList<Types.ACTIONS> actions = this.state.getAvailableActions();
-            if(actions.size() == 3)
-            {
-                //left, right
-                x_arrNeig = new int[]{-1, 1};
-                y_arrNeig = new int[]{0,  0};
-            }else
-            {
-                //up, down, left, right
-                x_arrNeig = new int[]{0,    0,    -1,    1};
-                y_arrNeig = new int[]{-1,   1,     0,    0};
-            }
+            //left, right
+            x_arrNeig = new int[]{-1, 1};
+            y_arrNeig = new int[]{0,  0};
+        }else
+        {
+            //up, down, left, right
+            x_arrNeig = new int[]{0,    0,    -1,    1};
+            y_arrNeig = new int[]{-1,   1,     0,    0};
         }
     }
 
@@ -101,7 +160,12 @@ public class PathFinder {
 
 
 
-    private boolean isObstacle(int row, int col)
+    boolean isObstacle(int row, int col)
+    {
+        return isObstacle(grid, row, col);
+    }
+
+    boolean isObstacle(ArrayList<Observation>[][] grid, int row, int col)
     {
         if(row<0 || row>=grid.length) return true;
         if(col<0 || col>=grid[row].length) return true;
@@ -20,6 +20,12 @@ public class Agent extends AbstractPlayer {
     private int MUTATION = 1;
     private int TOURNAMENT_SIZE = 2;
     private int ELITISM = 1;
+    // Rollouts resume from states cached for the action prefixes already rolled from the current
+    // root. In stochastic games that replays the one outcome sampled for each prefix, so it's
+    // off by default, and never used when re-evaluating the elite.
+    private boolean ROLLOUT_CACHE = false;
+    private int CACHE_CAPACITY = 100;
+    private int CACHE_STRIDE = 1;
     private StateHeuristic heuristic;
 
     // Constants
@@ -34,6 +40,8 @@ public class Agent extends AbstractPlayer {
     private int N_ACTIONS;
     private HashMap<Integer, Types.ACTIONS> action_mapping;
     private Random randomGenerator;
+    private RolloutCache rolloutCache;
+    private StateObservation rootState;
 
     // Budgets
     private ElapsedCpuTimer timer;
@@ -72,7 +80,7 @@ public class Agent extends AbstractPlayer {
         // RUN EVOLUTION
         remaining = timer.remainingTimeMillis();
         while (remaining > avgTimeTaken && remaining > BREAK_MS && keepIterating) {
-            runIteration(stateObs);
+            runIteration();
             remaining = timer.remainingTimeMillis();
         }
 
@@ -81,16 +89,15 @@ public class Agent extends AbstractPlayer {
     }
 
     /**
-     * Run evolutionary process for one generation
-     * @param stateObs - current game state
+     * Run evolutionary process for one generation, from the current game state (rootState)
      */
-    private void runIteration(StateObservation stateObs) {
+    private void runIteration() {
         ElapsedCpuTimer elapsedTimerIteration = new ElapsedCpuTimer();
 
         if (REEVALUATE) {
             for (int i = 0; i < ELITISM; i++) {
                 if (remaining > 2*avgTimeTakenEval && remaining > BREAK_MS) { // if enough time to evaluate one more individual
-                    evaluate(population[i], heuristic, stateObs);
+                    evaluate(population[i], heuristic, false);
                 } else {keepIterating = false;}
             }
         }
@@ -104,7 +111,7 @@ public class Agent extends AbstractPlayer {
                     newind = newind.mutate(MUTATION);
 
                     // evaluate new individual, insert into population
-                    add_individual(newind, nextPop, i, stateObs);
+                    add_individual(newind, nextPop, i);
 
                     remaining = timer.remainingTimeMillis();
                 } else {
@@ -128,7 +135,7 @@ public class Agent extends AbstractPlayer {
 
         } else if (NUM_INDIVIDUALS == 1){
             Individual newind = new Individual(SIMULATION_DEPTH, N_ACTIONS, randomGenerator).mutate(MUTATION);
-            evaluate(newind, heuristic, stateObs);
+            evaluate(newind, heuristic, true);
             if (newind.value > population[0].value)
                 nextPop[0] = newind;
         }
@@ -145,23 +152,37 @@ public class Agent extends AbstractPlayer {
      * and returning the value of the resulting state; random action chosen for the opponent
      * @param individual - individual to be valued
      * @param heuristic - heuristic to be used for state evaluation
-     * @param state - current state, root of rollouts
+     * @param useCache - true to resume from the states cached for its prefixes (if the cache is on),
+     *                 false to roll it from the current state (i.e. to re-evaluate it with new samples)
      * @return - value of last state reached
      */
-    private double evaluate(Individual individual, StateHeuristic heuristic, StateObservation state) {
+    private double evaluate(Individual individual, StateHeuristic heuristic, boolean useCache) {
 
         ElapsedCpuTimer elapsedTimerIterationEval = new ElapsedCpuTimer();
 
-        StateObservation st = state.copy();
+        // resume from the deepest state cached for a prefix of this individual, if any
+        int start = 0;
+        StateObservation st;
+        boolean cached = useCache && rolloutCache != null;
+        if (cached) {
+            RolloutCache.Node node = rolloutCache.deepest(individual.actions, SIMULATION_DEPTH);
+            st = node.state.copy();
+            start = node.depth;
+        } else {
+            st = rootState.copy();
+        }
+
         int i;
         double acum = 0, avg;
-        for (i = 0; i < SIMULATION_DEPTH; i++) {
+        for (i = start; i < SIMULATION_DEPTH; i++) {
             if (! st.isGameOver()) {
                 ElapsedCpuTimer elapsedTimerIteration = new ElapsedCpuTimer();
                 st.advance(action_mapping.get(individual.actions[i]));
+                if (cached && i+1 < SIMULATION_DEPTH && rolloutCache.wants(i+1))
+                    rolloutCache.put(individual.actions, i+1, st.copy());
 
                 acum += elapsedTimerIteration.elapsedMillis();
-                avg = acum / (i+1);
+                avg = acum / (i+1-start);
                 remaining = timer.remainingTimeMillis();
                 if (remaining < 2*avg || remaining < BREAK_MS) break;
             } else {
@@ -212,10 +233,9 @@ public class Agent extends AbstractPlayer {
      * @param newind - individual to be inserted into population
      * @param pop - population
      * @param idx - position where individual should be inserted
-     * @param stateObs - current game state
      */
-    private void add_individual(Individual newind, Individual[] pop, int idx, StateObservation stateObs) {
-        evaluate(newind, heuristic, stateObs);
+    private void add_individual(Individual newind, Individual[] pop, int idx) {
+        evaluate(newind, heuristic, true);
         pop[idx] = newind.copy();
     }
 
@@ -236,12 +256,19 @@ public class Agent extends AbstractPlayer {
         }
         action_mapping.put(k, Types.ACTIONS.ACTION_NIL);
 
+        // cached prefixes are only valid for this root state
+        rootState = stateObs;
+        if (ROLLOUT_CACHE) {
+            rolloutCache = new RolloutCache(N_ACTIONS, CACHE_CAPACITY, CACHE_STRIDE);
+            rolloutCache.reset(stateObs);
+        }
+
         population = new Individual[POPULATION_SIZE];
         nextPop = new Individual[POPULATION_SIZE];
         for (int i = 0; i < POPULATION_SIZE; i++) {
             if (i == 0 || remaining > avgTimeTakenEval && remaining > BREAK_MS) {
                 population[i] = new Individual(SIMULATION_DEPTH, N_ACTIONS, randomGenerator);
-                evaluate(population[i], heuristic, stateObs);
+                evaluate(population[i], heuristic, true);
                 remaining = timer.remainingTimeMillis();
                 NUM_INDIVIDUALS = i+1;
             } else {break;}
@@ -0,0 +1,100 @@
+package tracks.singlePlayer.advanced.sampleRHEA;
+
+import core.game.StateObservation;
+
+/**
+ * Trie of intermediate game states, keyed by action prefix. Individuals that share the first
+ * actions of their sequence (i.e. a mutated child and its parent) can resume their rollout from
+ * the deepest cached prefix instead of re-simulating it from the root state.
+ * The cache is only valid for one root state, so it must be reset every game tick.
+ * In stochastic games, each cached state is the one outcome sampled for its prefix, and every
+ * individual that shares the prefix continues from that same outcome (see Agent.ROLLOUT_CACHE).
+ */
+class RolloutCache {
+
+    private Node root;
+    private int nActions;
+    private int capacity;
+    private int stride;
+    private int numStates;
+
+    /**
+     * @param nActions - number of different action indices an individual can hold
+     * @param capacity - maximum number of states stored in the cache
+     * @param stride - only prefixes whose length is a multiple of this value get their state stored
+     */
+    RolloutCache(int nActions, int capacity, int stride) {
+        this.nActions = nActions;
+        this.capacity = capacity;
+        this.stride = Math.max(1, stride);
+    }
+
+    /**
+     * Empties the cache and sets the state all prefixes start from.
+     * @param rootState - current game state, never advanced by the cache
+     */
+    void reset(StateObservation rootState) {
+        root = new Node(0, nActions);
+        root.state = rootState;
+        numStates = 0;
+    }
+
+    /**
+     * Finds the deepest stored state reached by a prefix of the given actions.
+     * @param actions - action indices of the individual
+     * @param maxDepth - maximum prefix length to consider
+     * @return - node holding the state; the root node if no prefix is cached
+     */
+    Node deepest(int[] actions, int maxDepth) {
+        Node node = root, best = root;
+        for (int i = 0; i < maxDepth && node != null; i++) {
+            node = node.children[actions[i]];
+            if (node != null && node.state != null)
+                best = node;
+        }
+        return best;
+    }
+
+    /**
+     * Indicates if the state reached after the given number of actions should be stored.
+     * @param depth - length of the prefix
+     * @return - true if the cache would keep this state
+     */
+    boolean wants(int depth) {
+        return numStates < capacity && depth % stride == 0;
+    }
+
+    /**
+     * Stores the state reached by applying the first 'depth' actions to the root state.
+     * The state is kept as given, so callers must pass a copy they will not advance.
+     * @param actions - action indices of the individual
+     * @param depth - length of the prefix
+     * @param state - state reached after the prefix
+     */
+    void put(int[] actions, int depth, StateObservation state) {
+        Node node = root;
+        for (int i = 0; i < depth; i++) {
+            Node child = node.children[actions[i]];
+            if (child == null) {
+                child = new Node(i + 1, nActions);
+                node.children[actions[i]] = child;
+            }
+            node = child;
+        }
+        if (node.state == null) {
+            node.state = state;
+            numStates++;
+        }
+    }
+
+    static class Node {
+        StateObservation state;
+        Node[] children;
+        int depth;
+
+        Node(int depth, int nActions) {
+            this.depth = depth;
+            this.children = new Node[nActions];
+        }
+    }
+}